@@ -0,0 +1,53 @@
+package se.enit.pdfaccessibilityservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * The service wired by hand with the defaults from application.properties, as Spring would wire it,
+ * without starting the application context.
+ */
+final class BenchmarkServices implements AutoCloseable {
+
+    private final ExecutorConfig executorConfig = new ExecutorConfig();
+    private final ThreadPoolExecutor extractionExecutor = executorConfig.pdfExtractionExecutor(0);
+    private final ThreadPoolExecutor imageExecutor = executorConfig.pdfImageExecutor(0);
+    private final ThreadPoolExecutor processingExecutor = executorConfig.pdfProcessingExecutor(0);
+
+    private final FontProgramCache fontProgramCache = new FontProgramCache(64L << 20);
+    private final FontRegistry fontRegistry = new FontRegistry("classpath*:fonts/*.*", "Arial");
+    private final PdfService pdfService;
+
+    BenchmarkServices() throws IOException {
+        ImageTranscoder imageTranscoder = new ImageTranscoder(imageExecutor, 4, new String[0]);
+        FontStore fontStore = new FontStore(fontProgramCache,
+                Files.createTempDirectory("pdf-benchmark-fonts").toString());
+        MemoryBudget memoryBudget = new MemoryBudget(0, 20, 10000, 16L << 20, 2, 256L << 10, 64L << 10);
+        pdfService = new PdfService(new PageExtractionStage(extractionExecutor, imageTranscoder), imageTranscoder,
+                fontProgramCache, fontRegistry, fontStore, memoryBudget, processingExecutor,
+                new PdfMetrics(new SimpleMeterRegistry(), fontProgramCache, memoryBudget,
+                        TemplateRepositories.storing("synthetic"), 50));
+    }
+
+    PdfService getPdfService() {
+        return pdfService;
+    }
+
+    FontProgramCache getFontProgramCache() {
+        return fontProgramCache;
+    }
+
+    FontRegistry getFontRegistry() {
+        return fontRegistry;
+    }
+
+    @Override
+    public void close() {
+        extractionExecutor.shutdown();
+        imageExecutor.shutdown();
+        processingExecutor.shutdown();
+    }
+}
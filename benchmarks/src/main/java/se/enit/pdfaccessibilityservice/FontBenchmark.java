@@ -0,0 +1,108 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.kernel.font.PdfFont;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Font handling per text element: parsing a font program, looking it up in the {@link FontProgramCache},
+ * {@link PdfService#resolveFont} the first time a document uses a font and every time after, and writing
+ * the CIDSet of a subset.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FontBenchmark {
+
+    private BenchmarkServices services;
+    private byte[] fontBytes;
+    private JSONObject bundledElement;
+    private JSONObject embeddedElement;
+    private DocumentFonts documentFonts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        services = new BenchmarkServices();
+        try (InputStream in = PdfService.class.getResourceAsStream("/fonts/arial.ttf")) {
+            fontBytes = in.readAllBytes();
+        }
+        services.getFontProgramCache().get(fontBytes);
+
+        bundledElement = new JSONObject().put("fontFamily", "Arial");
+        embeddedElement = new JSONObject().put("font", Base64.getEncoder().encodeToString(fontBytes));
+        documentFonts = new DocumentFonts();
+        services.getPdfService().resolveFont(bundledElement, documentFonts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        services.close();
+    }
+
+    @Benchmark
+    public FontProgram parseFont() throws IOException {
+        return FontProgramFactory.createFont(fontBytes, false);
+    }
+
+    @Benchmark
+    public FontProgramCache.CachedFont cacheHit() throws IOException {
+        return services.getFontProgramCache().get(fontBytes);
+    }
+
+    @Benchmark
+    public PdfFont resolveBundledFirstUse() throws Exception {
+        return services.getPdfService().resolveFont(bundledElement, new DocumentFonts());
+    }
+
+    @Benchmark
+    public PdfFont resolveEmbeddedFirstUse() throws Exception {
+        return services.getPdfService().resolveFont(embeddedElement, new DocumentFonts());
+    }
+
+    @Benchmark
+    public PdfFont resolveRepeated() throws Exception {
+        return services.getPdfService().resolveFont(bundledElement, documentFonts);
+    }
+
+    @Benchmark
+    public byte[] cidSet(UsedGlyphs usedGlyphs) {
+        return CidSetPdfDocument.toCidSet(usedGlyphs.glyphs);
+    }
+
+    @State(Scope.Thread)
+    public static class UsedGlyphs {
+        @Param({"100", "1000"})
+        public int count;
+
+        private BitSet glyphs;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // Glyph ids spread over the range of a Latin font, as a page of text would use them
+            Random random = new Random(42);
+            glyphs = new BitSet();
+            glyphs.set(0);
+            while (glyphs.cardinality() <= count) {
+                glyphs.set(random.nextInt(3400));
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finding the images of a page: indexing the image placements, and matching every image tag to its
+ * placement and hashing the image content, without copying or transcoding the images.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ImageMatchBenchmark {
+
+    @Param({"1", "5"})
+    public int imagesPerPage;
+
+    private final ImageExtractor imageExtractor = new ImageExtractor();
+    private PdfDocument pdfDocument;
+    private PdfPage page;
+    private JSONArray tags;
+    private List<Integer> tagIndexes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticPdf input = SyntheticPdf.generate(1, 3, 1, 8, 4, imagesPerPage);
+        pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(input.getPdf())));
+        page = pdfDocument.getPage(1);
+        tags = new JSONObject(input.getTags()).getJSONArray("taggingInformation");
+        tagIndexes = new ArrayList<>();
+        for (int i = 0; i < tags.length(); i++) {
+            if ("image".equals(tags.getJSONObject(i).getString("type"))) {
+                tagIndexes.add(i);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pdfDocument.close();
+    }
+
+    @Benchmark
+    public PageImageIndex indexPlacements() {
+        return PageImageIndex.build(page);
+    }
+
+    @Benchmark
+    public Map<Integer, ImageDataWithPosition> matchImages() {
+        return imageExtractor.matchPageImages(page, 1, tagIndexes, tags, (imageStream, placed) -> null);
+    }
+}
@@ -0,0 +1,325 @@
+package se.enit.pdfaccessibilityservice;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load test of {@code POST /create-accessible-pdf} for sizing deployments. For every workload shape it
+ * generates a {@link SyntheticPdf}, sends it a number of times at a fixed concurrency, and reports latency
+ * percentiles and throughput. When it starts the application itself ({@code --jar}) it also reports the
+ * peak RSS of the application and the GC pauses it logged while the shape ran.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar se.enit.pdfaccessibilityservice.LoadTest \
+ *     --jar target/PdfController-0.0.1-SNAPSHOT-exec.jar --jvm-args "-Xmx2g" \
+ *     --concurrency 8 --requests 100 \
+ *     --shape text:pages=5,tables=0,images=0 --shape mixed:pages=20,tables=2,images=2
+ * </pre>
+ *
+ * Options: {@code --url} of an already running application instead of {@code --jar} (default
+ * http://localhost:8085); {@code --port}, {@code --jvm-args} and {@code --app-args} for the started
+ * application; {@code --concurrency}, {@code --requests} and {@code --warmup} requests per shape; and any
+ * number of {@code --shape name:key=value,...} with the keys pages, text, tables, rows, cols and images.
+ */
+public class LoadTest {
+
+    private static final Pattern GC_PAUSE = Pattern.compile("Pause.*\\s(\\d+(?:\\.\\d+)?)ms\\s*$");
+    private static final Map<String, String> DEFAULT_SHAPES = new LinkedHashMap<>();
+
+    static {
+        DEFAULT_SHAPES.put("text", "pages=5,text=4,tables=0,images=0");
+        DEFAULT_SHAPES.put("tables", "pages=5,text=1,tables=3,rows=10,cols=6,images=0");
+        DEFAULT_SHAPES.put("images", "pages=5,text=2,tables=0,images=4");
+        DEFAULT_SHAPES.put("mixed", "pages=20,text=3,tables=2,images=2");
+        DEFAULT_SHAPES.put("large", "pages=100,text=3,tables=1,images=1");
+    }
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final URI endpoint;
+    private final Process application;
+    private final Path gcLog;
+
+    private LoadTest(URI endpoint, Process application, Path gcLog) {
+        this.endpoint = endpoint;
+        this.application = application;
+        this.gcLog = gcLog;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, List<String>> options = parseOptions(args);
+        int concurrency = Integer.parseInt(option(options, "concurrency", "4"));
+        int requests = Integer.parseInt(option(options, "requests", "50"));
+        int warmup = Integer.parseInt(option(options, "warmup", "5"));
+
+        Map<String, String> shapes = new LinkedHashMap<>();
+        for (String shape : options.getOrDefault("shape", List.of())) {
+            int colon = shape.indexOf(':');
+            shapes.put(colon > 0 ? shape.substring(0, colon) : shape, colon > 0 ? shape.substring(colon + 1) : "");
+        }
+        if (shapes.isEmpty()) {
+            shapes.putAll(DEFAULT_SHAPES);
+        }
+
+        Process application = null;
+        Path gcLog = null;
+        String url = option(options, "url", "http://localhost:8085");
+        if (options.containsKey("jar")) {
+            String port = option(options, "port", "8085");
+            gcLog = Files.createTempFile("load-test-gc-", ".log");
+            application = startApplication(option(options, "jar", null), option(options, "jvm-args", ""),
+                    option(options, "app-args", ""), port, gcLog);
+            url = "http://localhost:" + port;
+        }
+
+        LoadTest loadTest = new LoadTest(URI.create(url + "/create-accessible-pdf"), application, gcLog);
+        try {
+            loadTest.awaitApplication();
+            System.out.printf("%-10s %6s %6s %6s %6s %9s %9s %9s %9s %8s %8s %10s %10s%n",
+                    "shape", "pages", "tags", "ok", "429", "errors", "p50 ms", "p95 ms", "p99 ms",
+                    "docs/s", "pages/s", "peak RSS", "GC pause");
+            for (Map.Entry<String, String> shape : shapes.entrySet()) {
+                System.out.println(loadTest.run(shape.getKey(), generate(shape.getValue()), concurrency, requests, warmup));
+            }
+        } finally {
+            if (application != null) {
+                application.destroy();
+                application.waitFor(30, TimeUnit.SECONDS);
+                Files.deleteIfExists(gcLog);
+            }
+        }
+    }
+
+    private static Map<String, List<String>> parseOptions(String[] args) {
+        Map<String, List<String>> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.computeIfAbsent(args[i].substring(2), k -> new ArrayList<>()).add(args[++i]);
+        }
+        return options;
+    }
+
+    private static String option(Map<String, List<String>> options, String name, String defaultValue) {
+        List<String> values = options.get(name);
+        return values != null ? values.get(values.size() - 1) : defaultValue;
+    }
+
+    private static SyntheticPdf generate(String shape) {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        for (String pair : shape.split(",")) {
+            if (!pair.isBlank()) {
+                String[] keyValue = pair.split("=", 2);
+                values.put(keyValue[0].trim(), Integer.parseInt(keyValue[1].trim()));
+            }
+        }
+        return SyntheticPdf.generate(values.getOrDefault("pages", 5), values.getOrDefault("text", 3),
+                values.getOrDefault("tables", 1), values.getOrDefault("rows", 8), values.getOrDefault("cols", 4),
+                values.getOrDefault("images", 1));
+    }
+
+    private static Process startApplication(String jar, String jvmArgs, String appArgs, String port, Path gcLog)
+            throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(split(jvmArgs));
+        command.add("-Xlog:gc:file=" + gcLog);
+        command.add("-jar");
+        command.add(jar);
+        command.add("--server.port=" + port);
+        command.addAll(split(appArgs));
+        File log = new File("load-test-app.log");
+        System.out.println("Starting " + String.join(" ", command) + ", output in " + log.getAbsolutePath());
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+    }
+
+    private static List<String> split(String args) {
+        return args.isBlank() ? List.of() : Arrays.asList(args.trim().split("\\s+"));
+    }
+
+    private void awaitApplication() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while (true) {
+            try {
+                // Any answer means the application is accepting requests
+                client.send(HttpRequest.newBuilder(endpoint).GET().build(), HttpResponse.BodyHandlers.discarding());
+                return;
+            } catch (ConnectException e) {
+                if (application != null && !application.isAlive()) {
+                    throw new IllegalStateException("The application exited with " + application.exitValue());
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("The application did not start at " + endpoint);
+                }
+                Thread.sleep(500);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private String run(String name, SyntheticPdf input, int concurrency, int requests, int warmup)
+            throws InterruptedException, IOException {
+        String boundary = UUID.randomUUID().toString();
+        byte[] body = multipartBody(boundary, input);
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .timeout(Duration.ofMinutes(10))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        for (int i = 0; i < warmup; i++) {
+            send(request);
+        }
+
+        resetPeakRss();
+        long gcLogOffset = gcLog != null ? Files.size(gcLog) : 0;
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        AtomicInteger remaining = new AtomicInteger(requests);
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int w = 0; w < concurrency; w++) {
+            workers.execute(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    long sent = System.nanoTime();
+                    int status = send(request);
+                    if (status == 200) {
+                        latencies.add(System.nanoTime() - sent);
+                    } else if (status == 429) {
+                        rejected.incrementAndGet();
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.DAYS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        double docsPerSecond = sorted.length / seconds;
+        return String.format("%-10s %6d %6d %6d %6d %9d %9.0f %9.0f %9.0f %8.2f %8.1f %10s %10s",
+                name, input.getPages(), input.getTagCount(), sorted.length, rejected.get(), errors.get(),
+                percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99),
+                docsPerSecond, docsPerSecond * input.getPages(), peakRss(), gcPauses(gcLogOffset));
+    }
+
+    private static byte[] multipartBody(String boundary, SyntheticPdf input) {
+        String pdfHeader = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"pdf\"; filename=\"input.pdf\"\r\n"
+                + "Content-Type: application/pdf\r\n\r\n";
+        String tagsPart = "\r\n--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"tags\"\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n\r\n"
+                + input.getTags()
+                + "\r\n--" + boundary + "--\r\n";
+        byte[] head = pdfHeader.getBytes(StandardCharsets.UTF_8);
+        byte[] tail = tagsPart.getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[head.length + input.getPdf().length + tail.length];
+        System.arraycopy(head, 0, body, 0, head.length);
+        System.arraycopy(input.getPdf(), 0, body, head.length, input.getPdf().length);
+        System.arraycopy(tail, 0, body, head.length + input.getPdf().length, tail.length);
+        return body;
+    }
+
+    private int send(HttpRequest request) {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private static double percentile(long[] sortedNanos, int percentile) {
+        if (sortedNanos.length == 0) {
+            return Double.NaN;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedNanos.length);
+        return sortedNanos[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    /**
+     * Resets the peak RSS of the application, so the next reading covers only the current shape. Linux only.
+     */
+    private void resetPeakRss() {
+        if (application == null) {
+            return;
+        }
+        try {
+            Files.writeString(Paths.get("/proc", String.valueOf(application.pid()), "clear_refs"), "5");
+        } catch (IOException e) {
+            // Not Linux, or not permitted; the reading is then the peak since start
+        }
+    }
+
+    private String peakRss() {
+        if (application == null) {
+            return "n/a";
+        }
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc", String.valueOf(application.pid()), "status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    long kilobytes = Long.parseLong(line.replaceAll("\\D", ""));
+                    return (kilobytes >> 10) + " MB";
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux
+        }
+        return "n/a";
+    }
+
+    /**
+     * Total GC pause time the application logged since {@code offset} in its GC log.
+     */
+    private String gcPauses(long offset) throws IOException {
+        if (gcLog == null) {
+            return "n/a";
+        }
+        byte[] log = Files.readAllBytes(gcLog);
+        String appended = new String(log, (int) Math.min(offset, log.length), (int) Math.max(0, log.length - offset),
+                StandardCharsets.UTF_8);
+        double totalMillis = 0;
+        for (String line : appended.split("\n")) {
+            Matcher matcher = GC_PAUSE.matcher(line);
+            if (matcher.find()) {
+                totalMillis += Double.parseDouble(matcher.group(1));
+            }
+        }
+        return String.format("%.0f ms", totalMillis);
+    }
+}
@@ -0,0 +1,68 @@
+package se.enit.pdfaccessibilityservice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole request through {@link PdfService#processPdf(PdfInputSource, String, OutputStream)}, the path
+ * the jobs take, from a spooled input file to the accessible PDF written to a discarding stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ProcessPdfBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int pages;
+
+    @Param({"0", "2"})
+    public int tablesPerPage;
+
+    @Param({"0", "2"})
+    public int imagesPerPage;
+
+    private BenchmarkServices services;
+    private SyntheticPdf input;
+    private Path inputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        services = new BenchmarkServices();
+        input = SyntheticPdf.generate(pages, tablesPerPage, imagesPerPage);
+        inputFile = Files.createTempFile("pdf-benchmark-", ".pdf");
+        Files.write(inputFile, input.getPdf());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        services.close();
+        Files.deleteIfExists(inputFile);
+    }
+
+    @Benchmark
+    public void processPdf() throws IOException {
+        try (PdfInputSource source = PdfInputSource.open(inputFile)) {
+            services.getPdfService().processPdf(source, input.getTags(), OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link TableProcessor#extractTableCells} on a single table, from an already built page index, and
+ * including building the index as the first table of a page pays for it.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TableCellsBenchmark {
+
+    private static final float CM_TO_POINTS = 28.3465f;
+
+    @Param({"8", "24"})
+    public int rows;
+
+    @Param({"4", "8"})
+    public int cols;
+
+    private final TableProcessor tableProcessor = new TableProcessor();
+    private PdfDocument pdfDocument;
+    private PdfPage page;
+    private float pageHeight;
+    private TaggingInfo tableInfo;
+    private List<Rectangle> regions;
+    private PageTextIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticPdf input = SyntheticPdf.generate(1, 0, 1, rows, cols, 0);
+        pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(input.getPdf())));
+        page = pdfDocument.getPage(1);
+        pageHeight = page.getPageSize().getHeight();
+
+        JSONObject table = new JSONObject(input.getTags()).getJSONArray("taggingInformation").getJSONObject(0);
+        tableInfo = new TaggingInfo();
+        tableInfo.setId(table.getString("id"));
+        tableInfo.setName(table.getString("id"));
+        tableInfo.setType("table");
+        tableInfo.setPage(1);
+        tableInfo.setX(table.getDouble("x"));
+        tableInfo.setY(table.getDouble("y"));
+        tableInfo.setWidth(table.getDouble("width"));
+        tableInfo.setHeight(table.getDouble("height"));
+        tableInfo.setContainsTable(true);
+        tableInfo.setRowCount(rows);
+        tableInfo.setColCount(cols);
+        tableInfo.setRowPositions(toFloats(table.getJSONArray("rowPositions")));
+        tableInfo.setColPositions(toFloats(table.getJSONArray("colPositions")));
+        WcagTableData wcagData = new WcagTableData();
+        wcagData.setHasHeader(true);
+        wcagData.setHeaderRows(Collections.singletonList(0));
+        wcagData.setHeaderCols(Collections.emptyList());
+        tableInfo.setWcagData(wcagData);
+
+        float height = (float) tableInfo.getHeight() * CM_TO_POINTS;
+        regions = Collections.singletonList(new Rectangle(
+                (float) tableInfo.getX() * CM_TO_POINTS,
+                pageHeight - (float) tableInfo.getY() * CM_TO_POINTS - height,
+                (float) tableInfo.getWidth() * CM_TO_POINTS,
+                height));
+        index = PageTextIndex.build(page, regions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pdfDocument.close();
+    }
+
+    private static List<Float> toFloats(JSONArray positions) {
+        List<Float> values = new ArrayList<>();
+        for (int i = 0; i < positions.length(); i++) {
+            values.add(positions.getFloat(i));
+        }
+        return values;
+    }
+
+    @Benchmark
+    public List<TableCellData> extractCells() throws IOException {
+        return tableProcessor.extractTableCells(index, tableInfo, pageHeight);
+    }
+
+    @Benchmark
+    public List<TableCellData> indexAndExtractCells() throws IOException {
+        return tableProcessor.extractTableCells(PageTextIndex.build(page, regions), tableInfo, pageHeight);
+    }
+}
@@ -0,0 +1,97 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text extraction from one page: parsing it with a {@link CustomTextRenderListener} per region as the
+ * service originally did, building the {@link PageTextIndex} once, and answering every region from the index.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TextExtractionBenchmark {
+
+    private static final float CM_TO_POINTS = 28.3465f;
+
+    @Param({"0", "2", "4"})
+    public int tablesPerPage;
+
+    private PdfDocument pdfDocument;
+    private PdfPage page;
+    private List<Rectangle> regions;
+    private PageTextIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticPdf input = SyntheticPdf.generate(1, tablesPerPage, 0);
+        pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(input.getPdf())));
+        page = pdfDocument.getPage(1);
+        float pageHeight = page.getPageSize().getHeight();
+
+        regions = new ArrayList<>();
+        JSONArray tags = new JSONObject(input.getTags()).getJSONArray("taggingInformation");
+        for (int i = 0; i < tags.length(); i++) {
+            JSONObject tag = tags.getJSONObject(i);
+            float height = (float) tag.getDouble("height") * CM_TO_POINTS;
+            regions.add(new Rectangle(
+                    (float) tag.getDouble("x") * CM_TO_POINTS,
+                    pageHeight - (float) tag.getDouble("y") * CM_TO_POINTS - height,
+                    (float) tag.getDouble("width") * CM_TO_POINTS,
+                    height));
+        }
+        index = PageTextIndex.build(page, regions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pdfDocument.close();
+    }
+
+    @Benchmark
+    public void parsePagePerRegion(Blackhole blackhole) {
+        for (Rectangle region : regions) {
+            CustomTextRenderListener listener = new CustomTextRenderListener(region);
+            new PdfCanvasProcessor(listener).processPageContent(page);
+            listener.preprocessYCoordinates();
+            blackhole.consume(listener.getCleanExtractedText());
+        }
+    }
+
+    @Benchmark
+    public PageTextIndex buildIndex() {
+        return PageTextIndex.build(page, regions);
+    }
+
+    @Benchmark
+    public void replayRegions(Blackhole blackhole) {
+        for (Rectangle region : regions) {
+            CustomTextRenderListener listener = new CustomTextRenderListener(region);
+            index.replay(region, listener);
+            listener.preprocessYCoordinates();
+            blackhole.consume(listener.getCleanExtractedText());
+        }
+    }
+}
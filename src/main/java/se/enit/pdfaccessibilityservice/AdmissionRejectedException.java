@@ -0,0 +1,19 @@
+package se.enit.pdfaccessibilityservice;
+
+/**
+ * Thrown when a request cannot be given the memory it needs in time. Answered with 429 and Retry-After.
+ */
+public class AdmissionRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,165 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.font.otf.GlyphLine;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfType0Font;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Output document that writes the CIDSet of each embedded CID font from the glyphs actually in its
+ * embedded subset. iText marks every glyph of the font program, while the subset only contains the
+ * glyphs shown with the font, the components of composite glyphs among them, and .notdef. The CIDSet
+ * is built once per font, when the font is flushed on close.
+ */
+public class CidSetPdfDocument extends PdfDocument {
+    private static final Logger logger = LoggerFactory.getLogger(CidSetPdfDocument.class);
+
+    private final Map<PdfFont, BitSet> usedGlyphs = new IdentityHashMap<>();
+
+    // Glyphs of the font being flushed, while its font descriptor is written
+    private BitSet flushingGlyphs;
+
+    public CidSetPdfDocument(PdfWriter writer) {
+        super(writer);
+    }
+
+    /**
+     * Records the glyphs {@code text} is shown with in {@code font}. For Identity-H fonts the CID is the glyph id.
+     */
+    public void recordGlyphs(PdfFont font, String text) {
+        if (!(font instanceof PdfType0Font)) {
+            // Simple fonts have no CIDSet
+            return;
+        }
+        BitSet glyphs = usedGlyphs.computeIfAbsent(font, f -> {
+            BitSet notdef = new BitSet();
+            // The subset always keeps .notdef
+            notdef.set(0);
+            return notdef;
+        });
+        GlyphLine line = font.createGlyphLine(text);
+        for (int i = line.start; i < line.end; i++) {
+            glyphs.set(line.get(i).getCode());
+        }
+    }
+
+    @Override
+    protected void flushFonts() {
+        for (Map.Entry<PdfFont, BitSet> entry : usedGlyphs.entrySet()) {
+            flushingGlyphs = entry.getValue();
+            try {
+                entry.getKey().flush();
+            } finally {
+                flushingGlyphs = null;
+            }
+        }
+        super.flushFonts();
+    }
+
+    @Override
+    protected void flushObject(PdfObject object, boolean canBeInObjStm) throws IOException {
+        if (flushingGlyphs != null && object instanceof PdfDictionary) {
+            PdfDictionary dictionary = (PdfDictionary) object;
+            PdfStream cidSet = dictionary.getAsStream(PdfName.CIDSet);
+            if (PdfName.FontDescriptor.equals(dictionary.getAsName(PdfName.Type)) && cidSet != null) {
+                BitSet glyphs = subsetGlyphs(dictionary);
+                cidSet.setData(toCidSet(glyphs));
+                logger.info("Wrote CIDSet for {} with {} glyphs", dictionary.getAsName(PdfName.FontName),
+                        glyphs.cardinality());
+            }
+        }
+        super.flushObject(object, canBeInObjStm);
+    }
+
+    // The glyphs shown with the font, plus every glyph with an outline in the embedded TrueType subset.
+    // The subset also holds the components of composite glyphs; empty glyphs such as the space only
+    // count when shown, as the subset keeps an empty entry for every glyph it leaves out.
+    private BitSet subsetGlyphs(PdfDictionary fontDescriptor) {
+        BitSet glyphs = (BitSet) flushingGlyphs.clone();
+        PdfStream fontFile = fontDescriptor.getAsStream(PdfName.FontFile2);
+        if (fontFile == null || fontFile.isFlushed()) {
+            return glyphs;
+        }
+        try {
+            glyphs.or(glyphsWithOutlines(fontFile.getBytes()));
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the glyphs of {}, writing the CIDSet from the glyphs shown",
+                    fontDescriptor.getAsName(PdfName.FontName), e);
+        }
+        return glyphs;
+    }
+
+    /**
+     * Glyph ids with a non-empty entry in the {@code glyf} table of a TrueType font program.
+     *
+     * @throws IllegalArgumentException if the font has no {@code head}, {@code maxp} or {@code loca} table
+     */
+    static BitSet glyphsWithOutlines(byte[] font) {
+        int numTables = readUnsignedShort(font, 4);
+        int head = -1;
+        int maxp = -1;
+        int loca = -1;
+        for (int table = 0; table < numTables; table++) {
+            int record = 12 + table * 16;
+            String tag = new String(font, record, 4, StandardCharsets.ISO_8859_1);
+            int offset = readInt(font, record + 8);
+            if ("head".equals(tag)) {
+                head = offset;
+            } else if ("maxp".equals(tag)) {
+                maxp = offset;
+            } else if ("loca".equals(tag)) {
+                loca = offset;
+            }
+        }
+        if (head < 0 || maxp < 0 || loca < 0) {
+            throw new IllegalArgumentException("Not a TrueType font program with glyph outlines");
+        }
+
+        boolean longOffsets = readUnsignedShort(font, head + 50) != 0;
+        int numGlyphs = readUnsignedShort(font, maxp + 4);
+        BitSet glyphs = new BitSet(numGlyphs);
+        long previous = glyphOffset(font, loca, 0, longOffsets);
+        for (int glyph = 0; glyph < numGlyphs; glyph++) {
+            long next = glyphOffset(font, loca, glyph + 1, longOffsets);
+            if (next > previous) {
+                glyphs.set(glyph);
+            }
+            previous = next;
+        }
+        return glyphs;
+    }
+
+    private static long glyphOffset(byte[] font, int loca, int glyph, boolean longOffsets) {
+        return longOffsets ? readInt(font, loca + glyph * 4) & 0xFFFFFFFFL : readUnsignedShort(font, loca + glyph * 2) * 2L;
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return readUnsignedShort(data, offset) << 16 | readUnsignedShort(data, offset + 2);
+    }
+
+    // CIDSet bits are most significant first, sized by the highest CID rather than the glyph count
+    static byte[] toCidSet(BitSet glyphs) {
+        byte[] cidSet = new byte[(glyphs.length() + 7) / 8];
+        for (int cid = glyphs.nextSetBit(0); cid >= 0; cid = glyphs.nextSetBit(cid + 1)) {
+            cidSet[cid / 8] |= (byte) (0x80 >>> (cid % 8));
+        }
+        return cidSet;
+    }
+}
@@ -5,80 +5,118 @@ import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.canvas.parser.EventType;
 import com.itextpdf.kernel.pdf.canvas.parser.data.IEventData;
 import com.itextpdf.kernel.pdf.canvas.parser.data.TextRenderInfo;
-import com.itextpdf.kernel.pdf.canvas.parser.listener.LocationTextExtractionStrategy;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.util.Set;
 
-public class CustomTextRenderListener extends LocationTextExtractionStrategy {
+/**
+ * Collects the text chunks that intersect a filter rectangle. Accepted chunks are kept in a
+ * {@link TextChunkBuffer}; chunks outside the filter are never stored.
+ */
+public class CustomTextRenderListener implements IEventListener {
 
-    private static final Logger logger = LoggerFactory.getLogger(CustomTextRenderListener.class);
+    private static final Set<EventType> SUPPORTED_EVENTS = Collections.singleton(EventType.RENDER_TEXT);
 
     private String extractedFontName;
     private float extractedFontSize = 10;
     private Color extractedFontColor;
 
-    private StringBuilder extractedText = new StringBuilder();
-    private StringBuilder canonicalText = new StringBuilder();
+    private String extractedText;
+    private final StringBuilder canonicalText;
 
-    private Rectangle filterRectangle;
-    private final List<TextWithPosition> textWithPositionList = new ArrayList<>();
+    // Filter edges, computed once with the same float arithmetic the intersection test always used
+    private final boolean hasFilter;
+    private final float filterLeft;
+    private final float filterRight;
+    private final float filterBottom;
+    private final float filterTop;
 
-    private float lastY = -1;
-    private float lastFontSize = 10;
+    private final TextChunkBuffer chunks = new TextChunkBuffer();
+    private final float[] box = new float[4];
+
+    // Chunk indices sorted by descending Y, packed as (sortable Y key << 32 | index)
+    private long[] order;
 
     public CustomTextRenderListener(Rectangle filterRectangle) {
-        this.filterRectangle = filterRectangle;
+        this(filterRectangle, false);
+    }
+
+    /**
+     * @param recordCanonicalText keep the "[text | Y | FontSize]" debug trace returned by
+     *                            {@link #getCanonicalExtractedText()}
+     */
+    public CustomTextRenderListener(Rectangle filterRectangle, boolean recordCanonicalText) {
+        this.hasFilter = filterRectangle != null;
+        this.filterLeft = hasFilter ? filterRectangle.getX() : 0;
+        this.filterRight = hasFilter ? filterRectangle.getX() + filterRectangle.getWidth() : 0;
+        this.filterBottom = hasFilter ? filterRectangle.getY() : 0;
+        this.filterTop = hasFilter ? filterRectangle.getY() + filterRectangle.getHeight() : 0;
+        this.canonicalText = recordCanonicalText ? new StringBuilder() : null;
     }
 
     @Override
     public void eventOccurred(IEventData data, EventType type) {
-        if (type == EventType.RENDER_TEXT) {
+        if (type == EventType.RENDER_TEXT && hasFilter) {
             TextRenderInfo renderInfo = (TextRenderInfo) data;
-            Rectangle textRect = renderInfo.getDescentLine().getBoundingRectangle();
+            TextChunkBuffer.descentBox(renderInfo, box);
 
-            if (filterRectangle != null && textRect != null && rectanglesIntersect(filterRectangle, textRect)) {
-                String text = renderInfo.getText();
-                float currentY = textRect.getY();
-                float currentFontSize = renderInfo.getFontSize();
-                float yDiff = (lastY != -1) ? Math.abs(lastY - currentY) : 0;
-
-                // Save the text and coordinates
-                canonicalText.append(String.format("[%s | Y=%.2f | FontSize=%.2f] ", text, currentY, currentFontSize));
-                extractedText.append(text);
+            if (intersectsFilter(box[0], box[1], box[2], box[3])) {
+                chunks.add(renderInfo, box);
+                chunkAccepted();
+            }
+        }
+    }
 
-                lastY = currentY;
-                lastFontSize = currentFontSize;
+    @Override
+    public Set<EventType> getSupportedEvents() {
+        return SUPPORTED_EVENTS;
+    }
 
-                extractedFontName = renderInfo.getFont().getFontProgram().getFontNames().getFontName();
-                extractedFontSize = currentFontSize;
-                extractedFontColor = renderInfo.getFillColor();
+    // Accepts a chunk captured by a PageTextIndex pass as if it had been rendered to this listener
+    public void addTextChunk(TextChunkBuffer source, int index) {
+        if (hasFilter && intersectsFilter(source.getX(index), source.getY(index), source.getWidth(index), source.getHeight(index))) {
+            chunks.add(source, index);
+            chunkAccepted();
+        }
+    }
 
-                textWithPositionList.add(new TextWithPosition(text, textRect, extractedFontName, extractedFontSize, extractedFontColor));
-            }
+    private void chunkAccepted() {
+        int index = chunks.size() - 1;
+        if (canonicalText != null) {
+            canonicalText.append(String.format("[%s | Y=%.2f | FontSize=%.2f] ",
+                    chunks.getText(index), chunks.getY(index), chunks.getFontSize(index)));
         }
-        super.eventOccurred(data, type);
+        extractedFontName = chunks.getFontName(index);
+        extractedFontSize = chunks.getFontSize(index);
+        extractedFontColor = chunks.getFontColor(index);
+        extractedText = null;
+        order = null;
     }
 
     // New method to preprocess Y-coordinates and adjust spacing
     public void preprocessYCoordinates() {
-        if (textWithPositionList.isEmpty()) {
+        int count = chunks.size();
+        if (count == 0) {
             return;
         }
 
-        // Sort text by Y-coordinate (descending, since PDF coordinates are inverted)
-        Collections.sort(textWithPositionList, Comparator.comparingDouble((TextWithPosition t) -> t.getBoundingBox().getY()).reversed());
+        // Sort text by Y-coordinate (descending, since PDF coordinates are inverted). The index in the
+        // low bits keeps the sort stable without boxing or a comparator.
+        order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) sortableKey(-chunks.getY(i)) << 32) | i;
+        }
+        Arrays.sort(order);
 
         StringBuilder adjustedText = new StringBuilder();
         float previousY = -1;
 
-        for (TextWithPosition textPosition : textWithPositionList) {
-            float currentY = textPosition.getBoundingBox().getY();
-            float fontSize = textPosition.getFontSize();
+        for (long packed : order) {
+            int index = (int) packed;
+            float currentY = chunks.getY(index);
+            float fontSize = chunks.getFontSize(index);
             float lineSpacingThreshold = Math.max(fontSize * 1.0f, 7);
             float paragraphSpacingThreshold = Math.max(fontSize * 3.0f, 12);
 
@@ -86,8 +124,6 @@ public class CustomTextRenderListener extends LocationTextExtractionStrategy {
             if (previousY != -1) {
                 float yDiff = Math.abs(previousY - currentY);
 
-                logger.info("yDiff: " + yDiff + " lineSpacingThreshold: " + lineSpacingThreshold + " paragraphSpacingThreshold: " + paragraphSpacingThreshold);
-
                 if (yDiff > paragraphSpacingThreshold) {
                     adjustedText.append("\n\n");  // Paragraph break
                 } else if (yDiff > lineSpacingThreshold) {
@@ -95,30 +131,72 @@ public class CustomTextRenderListener extends LocationTextExtractionStrategy {
                 }
             }
 
-            adjustedText.append(textPosition.getText());
+            adjustedText.append(chunks.getText(index));
             previousY = currentY;
         }
 
         // Replace the extracted text with the adjusted one
-        extractedText = adjustedText;
+        extractedText = adjustedText.toString();
     }
 
     // Return clean text without Y-coordinates (for reinsertion)
     public String getCleanExtractedText() {
-        return extractedText.toString();
+        if (extractedText == null) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < chunks.size(); i++) {
+                text.append(chunks.getText(i));
+            }
+            extractedText = text.toString();
+        }
+        return extractedText;
     }
 
-    // Log canonical format (for debugging purposes)
+    // Log canonical format (for debugging purposes); empty unless requested in the constructor
     public String getCanonicalExtractedText() {
-        return canonicalText.toString();
+        return canonicalText != null ? canonicalText.toString() : "";
+    }
+
+    /**
+     * Combined bounding box of all accepted chunks, merged in line order once preprocessed.
+     */
+    public Rectangle getCombinedBoundingBox() {
+        int count = chunks.size();
+        if (count == 0) {
+            return new Rectangle(0, 0, 0, 0);
+        }
+
+        int first = order != null ? (int) order[0] : 0;
+        float x = chunks.getX(first);
+        float y = chunks.getY(first);
+        float width = chunks.getWidth(first);
+        float height = chunks.getHeight(first);
+
+        for (int i = 0; i < count; i++) {
+            int index = order != null ? (int) order[i] : i;
+            float otherX = chunks.getX(index);
+            float otherY = chunks.getY(index);
+            float combinedX = Math.min(x, otherX);
+            float combinedY = Math.min(y, otherY);
+            width = Math.max(x + width, otherX + chunks.getWidth(index)) - combinedX;
+            height = Math.max(y + height, otherY + chunks.getHeight(index)) - combinedY;
+            x = combinedX;
+            y = combinedY;
+        }
+        return new Rectangle(x, y, width, height);
     }
 
     // Check for rectangle intersection
-    private boolean rectanglesIntersect(Rectangle r1, Rectangle r2) {
-        return r1.getX() < r2.getX() + r2.getWidth() &&
-                r1.getX() + r1.getWidth() > r2.getX() &&
-                r1.getY() < r2.getY() + r2.getHeight() &&
-                r1.getY() + r1.getHeight() > r2.getY();
+    private boolean intersectsFilter(float x, float y, float width, float height) {
+        return filterLeft < x + width &&
+                filterRight > x &&
+                filterBottom < y + height &&
+                filterTop > y;
+    }
+
+    // Maps a float to an int whose signed order matches Float.compare
+    private static int sortableKey(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
     }
 
     public String getExtractedFontName() {
@@ -133,43 +211,7 @@ public class CustomTextRenderListener extends LocationTextExtractionStrategy {
         return extractedFontColor;
     }
 
-    public List<TextWithPosition> getTextWithPositionList() {
-        return textWithPositionList;
-    }
-
-    public static class TextWithPosition {
-        private final String text;
-        private final Rectangle boundingBox;
-        private final String fontName;
-        private final float fontSize;
-        private final Color fontColor;
-
-        public TextWithPosition(String text, Rectangle boundingBox, String fontName, float fontSize, Color fontColor) {
-            this.text = text;
-            this.boundingBox = boundingBox;
-            this.fontName = fontName;
-            this.fontSize = fontSize;
-            this.fontColor = fontColor;
-        }
-
-        public String getText() {
-            return text;
-        }
-
-        public Rectangle getBoundingBox() {
-            return boundingBox;
-        }
-
-        public String getFontName() {
-            return fontName;
-        }
-
-        public float getFontSize() {
-            return fontSize;
-        }
-
-        public Color getFontColor() {
-            return fontColor;
-        }
+    public TextChunkBuffer getChunks() {
+        return chunks;
     }
 }
@@ -0,0 +1,57 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The fonts of one output document. Every distinct font gets a single PdfFont, so all text elements
+ * using it share one font dictionary and one subset, written once when the document closes. Not
+ * thread-safe; a document is laid out by a single thread.
+ */
+public class DocumentFonts {
+
+    // Font programs are shared across requests, so the same instance means the same font
+    private final Map<FontProgram, PdfFont> byProgram = new IdentityHashMap<>();
+    private final Map<String, PdfFont> standardFonts = new HashMap<>();
+    // Base64 font data as sent in the tags, to skip decoding and hashing it again for every element
+    private final Map<String, PdfFont> byFontData = new HashMap<>();
+
+    public PdfFont forProgram(FontProgram program) {
+        return byProgram.computeIfAbsent(program, p ->
+                PdfFontFactory.createFont(p, PdfEncodings.IDENTITY_H, PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED));
+    }
+
+    /**
+     * One of the standard 14 fonts, in its default encoding; they have no Identity-H encoding.
+     */
+    public PdfFont standard(String fontName) throws IOException {
+        PdfFont font = standardFonts.get(fontName);
+        if (font == null) {
+            font = PdfFontFactory.createFont(fontName);
+            standardFonts.put(fontName, font);
+        }
+        return font;
+    }
+
+    /**
+     * Returns the font already created for this Base64 font data, or null.
+     */
+    public PdfFont forFontData(String base64Font) {
+        return byFontData.get(base64Font);
+    }
+
+    public void putFontData(String base64Font, PdfFont font) {
+        byFontData.put(base64Font, font);
+    }
+
+    public int size() {
+        return byProgram.size() + standardFonts.size();
+    }
+}
@@ -0,0 +1,57 @@
+package se.enit.pdfaccessibilityservice;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Bounded pool for read-only per-page extraction. Defaults to one thread per core.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor pdfExtractionExecutor(@Value("${pdf.extraction.threads:0}") int threads) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("pdf-extract-"));
+    }
+
+    /**
+     * Shared pool that decodes and re-encodes images that cannot be copied as-is. Defaults to one thread per core.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor pdfImageExecutor(@Value("${pdf.images.threads:0}") int threads) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("pdf-image-"));
+    }
+
+    /**
+     * Carrier pool for the CPU-bound processing of synchronous requests. Request threads, which may be
+     * virtual threads on Java 21, spool the upload and then wait here, so slow uploads do not hold a core
+     * and PDF work never runs on, or pins, the virtual thread carriers. Defaults to one thread per core.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor pdfProcessingExecutor(@Value("${pdf.processing.threads:0}") int threads) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("pdf-process-"));
+    }
+
+    /**
+     * Workers for asynchronous PDF jobs. The queue is bounded; submissions beyond it are rejected.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor pdfJobExecutor(@Value("${pdf.jobs.workers:2}") int workers,
+                                             @Value("${pdf.jobs.queue-capacity:50}") int queueCapacity) {
+        return new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("pdf-job-"));
+    }
+}
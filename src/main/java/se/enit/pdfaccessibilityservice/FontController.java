@@ -0,0 +1,56 @@
+package se.enit.pdfaccessibilityservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/fonts")
+public class FontController {
+
+    private static final Logger logger = LoggerFactory.getLogger(FontController.class);
+    private final FontStore fontStore;
+
+    public FontController(FontStore fontStore) {
+        this.fontStore = fontStore;
+    }
+
+    /**
+     * Registers a font and returns the hash to reference it by as {@code "fontRef"} in the tags.
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, String>> registerFont(@RequestParam("font") MultipartFile fontFile) {
+        logger.info("Received font {} ({} bytes)", fontFile.getOriginalFilename(), fontFile.getSize());
+        try {
+            FontProgramCache.CachedFont font = fontStore.register(fontFile.getBytes());
+            return ResponseEntity.created(URI.create("/fonts/" + font.getKey()))
+                    .body(Map.of("fontRef", font.getKey(),
+                            "fontName", font.getProgram().getFontNames().getFontName()));
+        } catch (IOException e) {
+            logger.warn("Rejected font {}: {}", fontFile.getOriginalFilename(), e.getMessage());
+            return ResponseEntity.status(400).body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * Lets clients check whether a font is already registered before uploading it.
+     */
+    @GetMapping("/{fontRef}")
+    public ResponseEntity<Map<String, String>> getFont(@PathVariable String fontRef) {
+        if (!fontStore.contains(fontRef)) {
+            return ResponseEntity.status(404).body(null);
+        }
+        return ResponseEntity.ok(Map.of("fontRef", fontRef));
+    }
+}
@@ -0,0 +1,159 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cross-request LRU cache of parsed font programs keyed by the SHA-256 of the font file, bounded by the
+ * total size of the cached font files. Parsed programs are immutable once built and are shared by all
+ * documents; each document still creates its own PdfFont and subset on top of them.
+ */
+@Component
+public class FontProgramCache {
+    private static final Logger logger = LoggerFactory.getLogger(FontProgramCache.class);
+
+    private final long maxBytes;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, CachedFont> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public FontProgramCache(@Value("${pdf.fonts.cache-max-bytes:67108864}") long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the parsed font for the given font file, parsing it on a miss.
+     */
+    public CachedFont get(byte[] fontBytes) throws IOException {
+        String key = digest(fontBytes);
+        synchronized (entries) {
+            CachedFont cached = entries.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        // Parse outside the lock; a concurrent miss for the same font just parses it twice
+        misses.incrementAndGet();
+        long start = System.currentTimeMillis();
+        // Not in iText's static FontCache, which is unbounded and would keep every evicted program alive
+        FontProgram program = FontProgramFactory.createFont(fontBytes, false);
+        CachedFont loaded = new CachedFont(key, program, fontBytes.length);
+        logger.info("Parsed font {} ({} bytes) in {} ms", program.getFontNames().getFontName(), fontBytes.length,
+                System.currentTimeMillis() - start);
+
+        synchronized (entries) {
+            CachedFont existing = entries.putIfAbsent(key, loaded);
+            if (existing != null) {
+                return existing;
+            }
+            cachedBytes += loaded.getWeight();
+            evict();
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the cached font with the given key, or null without parsing anything.
+     */
+    public CachedFont getIfPresent(String key) {
+        synchronized (entries) {
+            CachedFont cached = entries.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+            }
+            return cached;
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, CachedFont>> iterator = entries.entrySet().iterator();
+        // Always keep the most recent entry, even if it alone exceeds the budget
+        while (cachedBytes > maxBytes && entries.size() > 1 && iterator.hasNext()) {
+            CachedFont evicted = iterator.next().getValue();
+            iterator.remove();
+            cachedBytes -= evicted.getWeight();
+            evictions.incrementAndGet();
+            logger.info("Evicted font {} from cache", evicted.getProgram().getFontNames().getFontName());
+        }
+    }
+
+    static String digest(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getCachedBytes() {
+        synchronized (entries) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * A parsed font program and the identity of the font file it was parsed from.
+     */
+    public static class CachedFont {
+        private final String key;
+        private final FontProgram program;
+        private final long weight;
+
+        CachedFont(String key, FontProgram program, long weight) {
+            this.key = key;
+            this.program = program;
+            this.weight = weight;
+        }
+
+        // SHA-256 of the font file
+        public String getKey() {
+            return key;
+        }
+
+        public FontProgram getProgram() {
+            return program;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fonts bundled with the service, parsed once at startup and shared by all requests. Tags reference them by
+ * family and style name instead of embedding the font file:
+ * <pre>
+ * "fontFamily": "Arial Narrow", "fontStyle": "Bold Italic"
+ * </pre>
+ * The font files are memory-mapped rather than read onto the heap; fonts packaged inside the jar are
+ * extracted to a temporary directory first, since a jar entry cannot be mapped.
+ */
+@Component
+public class FontRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(FontRegistry.class);
+
+    private static final String REGULAR = "regular";
+
+    // Name table ids
+    private static final int LEGACY_FAMILY = 1;
+    private static final int LEGACY_STYLE = 2;
+    private static final int TYPOGRAPHIC_FAMILY = 16;
+    private static final int TYPOGRAPHIC_STYLE = 17;
+
+    // family/style, lower case
+    private final Map<String, FontProgram> fonts;
+    private final String defaultFamily;
+
+    /**
+     * @param defaultFamily family used for text whose font cannot be resolved
+     */
+    public FontRegistry(@Value("${pdf.fonts.bundled:classpath*:fonts/*.*}") String locationPattern,
+                        @Value("${pdf.fonts.default-family:Arial}") String defaultFamily) {
+        long start = System.currentTimeMillis();
+        Map<String, FontProgram> loaded = new HashMap<>();
+        try {
+            Path extracted = null;
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(locationPattern)) {
+                String name = resource.getFilename();
+                if (name == null || !isFontFile(name)) {
+                    continue;
+                }
+
+                Path path;
+                if (resource.isFile()) {
+                    path = resource.getFile().toPath();
+                } else {
+                    if (extracted == null) {
+                        extracted = Files.createTempDirectory("pdf-fonts");
+                        extracted.toFile().deleteOnExit();
+                    }
+                    path = extracted.resolve(name);
+                    try (InputStream in = resource.getInputStream()) {
+                        Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    path.toFile().deleteOnExit();
+                }
+
+                // Loading by path lets iText map the file instead of reading it onto the heap
+                FontProgram program = FontProgramFactory.createFont(path.toString(), false);
+                // Legacy family and style (Arial Narrow / Bold) as well as typographic ones (Arial / Narrow Bold)
+                register(loaded, program, LEGACY_FAMILY, LEGACY_STYLE);
+                register(loaded, program, TYPOGRAPHIC_FAMILY, TYPOGRAPHIC_STYLE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load bundled fonts from " + locationPattern, e);
+        }
+        this.fonts = Collections.unmodifiableMap(loaded);
+        this.defaultFamily = defaultFamily;
+        logger.info("Loaded {} bundled font styles in {} ms", fonts.size(), System.currentTimeMillis() - start);
+        if (getDefault() == null) {
+            logger.warn("Default font family {} is not bundled, unresolved fonts fall back to Helvetica", defaultFamily);
+        }
+    }
+
+    /**
+     * Returns the bundled font with the given family and style, or null if there is none. A blank style
+     * means regular; names are matched ignoring case.
+     */
+    public FontProgram find(String family, String style) {
+        return fonts.get(key(family, style));
+    }
+
+    /**
+     * Returns the regular style of the default family, or null if it is not bundled.
+     */
+    public FontProgram getDefault() {
+        return find(defaultFamily, "");
+    }
+
+    public String getDefaultFamily() {
+        return defaultFamily;
+    }
+
+    public Set<String> getFontKeys() {
+        return fonts.keySet();
+    }
+
+    private static boolean isFontFile(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".ttf") || lower.endsWith(".otf");
+    }
+
+    private static void register(Map<String, FontProgram> fonts, FontProgram program, int familyId, int styleId) {
+        Set<String> styles = names(program, styleId);
+        for (String family : names(program, familyId)) {
+            for (String style : styles) {
+                fonts.putIfAbsent(key(family, style), program);
+            }
+        }
+    }
+
+    // The English values of a name table entry; fonts also carry localized style names such as "Fett"
+    private static Set<String> names(FontProgram program, int nameId) {
+        Set<String> values = new LinkedHashSet<>();
+        String[][] names = program.getFontNames().getNames(nameId);
+        if (names != null) {
+            for (String[] name : names) {
+                // Platform, encoding, language, name; Windows US English or Macintosh English
+                if (("3".equals(name[0]) && "1033".equals(name[2])) || ("1".equals(name[0]) && "0".equals(name[2]))) {
+                    values.add(name[3]);
+                }
+            }
+        }
+        return values;
+    }
+
+    private static String key(String family, String style) {
+        String normalizedStyle = style == null || style.isBlank() || style.equalsIgnoreCase("normal")
+                ? REGULAR : style.trim();
+        return (family.trim() + "/" + normalizedStyle).toLowerCase(Locale.ROOT);
+    }
+}
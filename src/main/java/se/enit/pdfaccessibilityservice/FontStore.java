@@ -0,0 +1,90 @@
+package se.enit.pdfaccessibilityservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store of uploaded fonts. A font is registered once and then referenced from the
+ * tags by the SHA-256 of its file ({@code "fontRef"}), instead of embedding it in every element. Font
+ * files are kept in a local directory; parsed programs are served from the shared {@link FontProgramCache}.
+ */
+@Service
+public class FontStore {
+    private static final Logger logger = LoggerFactory.getLogger(FontStore.class);
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}");
+
+    private final FontProgramCache fontProgramCache;
+    private final Path fontDirectory;
+
+    public FontStore(FontProgramCache fontProgramCache,
+                     @Value("${pdf.fonts.dir:${java.io.tmpdir}/pdf-fonts}") String fontDirectory) throws IOException {
+        this.fontProgramCache = fontProgramCache;
+        this.fontDirectory = Files.createDirectories(Paths.get(fontDirectory));
+    }
+
+    /**
+     * Parses the font and stores it under its content hash, unless it is already stored.
+     *
+     * @throws IOException if the bytes are not a font iText can embed
+     */
+    public FontProgramCache.CachedFont register(byte[] fontBytes) throws IOException {
+        FontProgramCache.CachedFont font;
+        try {
+            font = fontProgramCache.get(fontBytes);
+        } catch (com.itextpdf.io.exceptions.IOException e) {
+            throw new IOException("Not a supported font: " + e.getMessage(), e);
+        }
+
+        Path file = fontFile(font.getKey());
+        if (!Files.exists(file)) {
+            // Write next to the target and move, so a concurrent reader never sees a partial file
+            Path partial = Files.createTempFile(fontDirectory, font.getKey(), ".part");
+            try {
+                Files.write(partial, fontBytes);
+                Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+            logger.info("Stored font {} as {}", font.getProgram().getFontNames().getFontName(), font.getKey());
+        }
+        return font;
+    }
+
+    /**
+     * Returns the registered font with the given content hash, or null if it was never registered.
+     */
+    public FontProgramCache.CachedFont find(String key) throws IOException {
+        if (!KEY.matcher(key).matches()) {
+            return null;
+        }
+        FontProgramCache.CachedFont cached = fontProgramCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        Path file = fontFile(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        // Evicted from memory, parse it again from disk
+        return fontProgramCache.get(Files.readAllBytes(file));
+    }
+
+    public boolean contains(String key) {
+        return KEY.matcher(key).matches() && Files.exists(fontFile(key));
+    }
+
+    private Path fontFile(String key) {
+        return fontDirectory.resolve(key + ".font");
+    }
+}
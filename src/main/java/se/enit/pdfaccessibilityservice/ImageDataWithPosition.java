@@ -1,27 +1,61 @@
 package se.enit.pdfaccessibilityservice;
 
 import com.itextpdf.kernel.geom.Rectangle;
-import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
 
+/**
+ * An image XObject drawn on an input page, identified by its object number in the input document.
+ * The encoded stream itself is only copied into the output when the image is placed.
+ */
 public class ImageDataWithPosition {
-    private final PdfImageXObject image;
+    private final String resourceName;
+    private final int objectNumber;
+    private final int generationNumber;
+    private final ImageTranscoder.Target transcodeTarget;
+    private final String contentKey;
     private final int page;
     private final Rectangle rect;
 
     private final String id;
 
     // Updated constructor
-    public ImageDataWithPosition(PdfImageXObject image, int page, Rectangle rect, String id) {
-        this.image = image;
+    public ImageDataWithPosition(String resourceName, int objectNumber, int generationNumber,
+                                 ImageTranscoder.Target transcodeTarget, String contentKey, int page, Rectangle rect, String id) {
+        this.resourceName = resourceName;
+        this.objectNumber = objectNumber;
+        this.generationNumber = generationNumber;
+        this.transcodeTarget = transcodeTarget;
+        this.contentKey = contentKey;
         this.page = page;
         this.rect = rect;
         this.id = id;
 
     }
 
-    // Getter for image
-    public PdfImageXObject getImage() {
-        return image;
+    // Getter for the XObject resource name
+    public String getResourceName() {
+        return resourceName;
+    }
+
+    public int getObjectNumber() {
+        return objectNumber;
+    }
+
+    public int getGenerationNumber() {
+        return generationNumber;
+    }
+
+    // Whether the image is decoded and re-encoded by the ImageTranscoder instead of copied
+    public boolean isTranscoded() {
+        return transcodeTarget != null;
+    }
+
+    public ImageTranscoder.Target getTranscodeTarget() {
+        return transcodeTarget;
+    }
+
+    // Hash of the encoded image; images with equal keys are written to the output once
+    public String getContentKey() {
+        return contentKey;
     }
 
     // Getter for page
@@ -0,0 +1,166 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+
+/**
+ * Matches the image tags of a page to the images actually drawn there, and copies matched
+ * images into the output document. Holds no state, so pages may be matched concurrently
+ * from separate documents.
+ */
+public class ImageExtractor {
+    private static final Logger logger = LoggerFactory.getLogger(ImageExtractor.class);
+
+    private static final float CM_TO_POINTS = 28.3465f;
+
+    /**
+     * Pairs every image tag on the page with the free image placement it overlaps most. A tag that
+     * overlaps no image falls back to the first free placement in content order.
+     *
+     * @param tagIndexes          indexes into {@code tags} of the image tags on this page, in tag order
+     * @param transcodePlan       given an image stream and the tag rectangle it is placed in, the transcoding
+     *                            target, or null to copy the image as-is
+     * @return matched images keyed by tag index
+     */
+    public Map<Integer, ImageDataWithPosition> matchPageImages(PdfPage page, int pageNumber, List<Integer> tagIndexes, JSONArray tags,
+                                                                BiFunction<PdfStream, Rectangle, ImageTranscoder.Target> transcodePlan) {
+        Map<Integer, ImageDataWithPosition> matches = new HashMap<>();
+        PageImageIndex placements = PageImageIndex.build(page);
+        float pageHeight = page.getPageSize().getHeight();
+        BitSet taken = new BitSet(placements.size());
+
+        for (int tagIndex : tagIndexes) {
+            JSONObject tag = tags.getJSONObject(tagIndex);
+            Rectangle tagRectangle = tagRectangle(tag, pageHeight);
+            int placement = placements.bestOverlap(tagRectangle, taken);
+            if (placement < 0) {
+                placement = taken.nextClearBit(0);
+            }
+            if (placement >= placements.size()) {
+                logger.warn("No image found for tag {} on page {}", tag.optString("id"), pageNumber);
+                continue;
+            }
+
+            taken.set(placement);
+            PdfObject imageObject = page.getDocument().getPdfObject(placements.getObjectNumber(placement));
+            if (!(imageObject instanceof PdfStream)) {
+                logger.warn("Image object {} on page {} is not a stream", placements.getObjectNumber(placement), pageNumber);
+                continue;
+            }
+            PdfStream imageStream = (PdfStream) imageObject;
+            ImageTranscoder.Target target = transcodePlan.apply(imageStream, tagRectangle);
+            // The same source transcoded to another size is a different output image
+            String contentKey = target != null ? contentKey(imageStream) + "@" + target : contentKey(imageStream);
+            matches.put(tagIndex, new ImageDataWithPosition(
+                    placements.getResourceName(placement),
+                    placements.getObjectNumber(placement),
+                    placements.getGenerationNumber(placement),
+                    target,
+                    contentKey,
+                    pageNumber,
+                    placements.getBounds(placement),
+                    tag.optString("id")
+            ));
+            imageStream.release();
+            logger.info("Image matched with ID: {} on page {}", tag.optString("id"), pageNumber);
+        }
+        return matches;
+    }
+
+    /**
+     * SHA-256 over the encoded bytes and dictionary of the image, following references to streams
+     * such as the soft mask by their content. Other indirect values are hashed by reference, so
+     * distinct images never share a key.
+     */
+    static String contentKey(PdfStream stream) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        updateDigest(digest, stream, 0);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void updateDigest(MessageDigest digest, PdfStream stream, int depth) {
+        digest.update(stream.getBytes(false));
+        for (PdfName key : new TreeSet<>(stream.keySet())) {
+            if (PdfName.Length.equals(key)) {
+                continue;
+            }
+            digest.update(key.toString().getBytes(StandardCharsets.ISO_8859_1));
+            PdfObject value = stream.get(key);
+            if (value instanceof PdfStream && depth < 2) {
+                updateDigest(digest, (PdfStream) value, depth + 1);
+            } else {
+                PdfObject raw = stream.get(key, false);
+                digest.update(String.valueOf(raw).getBytes(StandardCharsets.ISO_8859_1));
+            }
+        }
+    }
+
+    // Tag geometry is in cm from the top-left corner; the image is drawn downwards from y
+    private static Rectangle tagRectangle(JSONObject tag, float pageHeight) {
+        float x = (float) tag.optDouble("x", 0) * CM_TO_POINTS;
+        float y = (float) tag.optDouble("y", 0) * CM_TO_POINTS;
+        float width = (float) tag.optDouble("width", 100) * CM_TO_POINTS;
+        float height = (float) tag.optDouble("height", 12) * CM_TO_POINTS;
+        return new Rectangle(x, pageHeight - y - height, width, height);
+    }
+
+    /**
+     * Copies the encoded image stream (DCT, JPX, Flate, CCITT, ...) into the output document as-is,
+     * together with its colour space and soft mask. Pixels are only decoded and re-encoded when the
+     * stream cannot be copied; images that always need decoding go through {@link ImageTranscoder}.
+     * The input stream is released afterwards, so only the image being placed is held in memory.
+     */
+    public PdfImageXObject copyToDocument(PdfDocument inputDocument, ImageDataWithPosition imageData, PdfDocument outputDocument) {
+        PdfObject object = inputDocument.getPdfObject(imageData.getObjectNumber());
+        if (!(object instanceof PdfStream)) {
+            logger.warn("Image {} not found on page {}", imageData.getResourceName(), imageData.getPage());
+            return null;
+        }
+
+        PdfStream stream = (PdfStream) object;
+        PdfImageXObject source = new PdfImageXObject(stream);
+        try {
+            try {
+                return source.copyTo(outputDocument);
+            } catch (Exception e) {
+                logger.warn("Could not copy image {} on page {}, re-encoding it", imageData.getResourceName(), imageData.getPage(), e);
+            }
+
+            try {
+                return new PdfImageXObject(ImageDataFactory.create(source.getImageBytes()));
+            } catch (Exception e) {
+                logger.error("Failed to re-encode image " + imageData.getResourceName(), e);
+                return null;
+            }
+        } finally {
+            // Drop the input stream bytes; the reader loads them again if the page is parsed later
+            stream.release();
+        }
+    }
+}
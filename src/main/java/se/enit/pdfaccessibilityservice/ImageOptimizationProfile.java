@@ -0,0 +1,90 @@
+package se.enit.pdfaccessibilityservice;
+
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-request image optimisation, read from the optional {@code imageOptimization} object of the tags:
+ * <pre>
+ * "imageOptimization": { "targetDpi": 150, "encoder": "auto", "jpegQuality": 0.75 }
+ * </pre>
+ * Images placed at a higher effective resolution than {@code targetDpi} are downsampled and re-encoded.
+ * Without the object, or with {@code targetDpi} 0, images are passed through unchanged.
+ */
+public class ImageOptimizationProfile {
+
+    public enum Encoder {
+        /** CCITT G4 for bilevel images, JPEG for JPEG sources without transparency, Flate otherwise */
+        AUTO,
+        /** JPEG unless the image is bilevel or has transparency */
+        JPEG,
+        /** Lossless Flate; bilevel images still use CCITT G4 */
+        FLATE
+    }
+
+    public static final ImageOptimizationProfile NONE = new ImageOptimizationProfile(0, Encoder.AUTO, 0.75f);
+
+    private final float targetDpi;
+    private final Encoder encoder;
+    private final float jpegQuality;
+
+    public ImageOptimizationProfile(float targetDpi, Encoder encoder, float jpegQuality) {
+        this.targetDpi = targetDpi;
+        this.encoder = encoder;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * @throws InvalidTagsException if the object names an unknown encoder or holds an out of range value
+     */
+    public static ImageOptimizationProfile fromJson(JSONObject json) {
+        if (json == null) {
+            return NONE;
+        }
+        float targetDpi = number(json, "targetDpi", 0);
+        float jpegQuality = number(json, "jpegQuality", 0.75);
+        if (targetDpi < 0) {
+            throw new InvalidTagsException("imageOptimization.targetDpi must not be negative: " + targetDpi);
+        }
+        if (jpegQuality <= 0 || jpegQuality > 1) {
+            throw new InvalidTagsException("imageOptimization.jpegQuality must be above 0 and at most 1: " + jpegQuality);
+        }
+        return new ImageOptimizationProfile(targetDpi, encoder(json.optString("encoder", "auto")), jpegQuality);
+    }
+
+    private static Encoder encoder(String name) {
+        for (Encoder encoder : Encoder.values()) {
+            if (encoder.name().equalsIgnoreCase(name)) {
+                return encoder;
+            }
+        }
+        throw new InvalidTagsException("Unknown imageOptimization.encoder " + name + ", expected one of "
+                + Arrays.toString(Encoder.values()).toLowerCase(Locale.ROOT));
+    }
+
+    // optDouble would silently fall back to the default for a value that is not a number
+    private static float number(JSONObject json, String key, double defaultValue) {
+        if (!json.has(key)) {
+            return (float) defaultValue;
+        }
+        Object value = json.get(key);
+        if (!(value instanceof Number)) {
+            throw new InvalidTagsException("imageOptimization." + key + " must be a number: " + value);
+        }
+        return ((Number) value).floatValue();
+    }
+
+    public float getTargetDpi() {
+        return targetDpi;
+    }
+
+    public Encoder getEncoder() {
+        return encoder;
+    }
+
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+}
@@ -0,0 +1,397 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.codec.CCITTG4Encoder;
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.io.image.RawImageData;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfArray;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfNumber;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Decodes, downsamples and re-encodes the images that are not passed through, on a shared worker pool.
+ * Each request reads ahead at most {@code pdf.images.max-decoded} images, so only that many
+ * bitmaps and finished results are held for it at once while the document is assembled.
+ */
+@Component
+public class ImageTranscoder {
+    private static final Logger logger = LoggerFactory.getLogger(ImageTranscoder.class);
+
+    // Downsampling by less than this is not worth a lossy re-encode
+    private static final double MIN_DOWNSAMPLE_SCALE = 0.9;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxDecoded;
+    private final Set<String> convertedColorSpaces;
+
+    public ImageTranscoder(@Qualifier("pdfImageExecutor") ThreadPoolExecutor pdfImageExecutor,
+                           @Value("${pdf.images.max-decoded:4}") int maxDecoded,
+                           @Value("${pdf.images.convert-color-spaces:}") String[] convertedColorSpaces) {
+        this.executor = pdfImageExecutor;
+        this.maxDecoded = Math.max(1, maxDecoded);
+        this.convertedColorSpaces = new HashSet<>(Arrays.asList(convertedColorSpaces));
+    }
+
+    /**
+     * Decides whether the image must be decoded instead of copied, and into what. Images in one of
+     * the configured colour space families (e.g. Separation, DeviceN, Lab) are converted to RGB, and
+     * images placed above the profile's target DPI are downsampled.
+     *
+     * @param placed where the image will be drawn, in points
+     * @return the transcoding target, or null to copy the image as-is
+     */
+    public Target plan(PdfStream imageStream, Rectangle placed, ImageOptimizationProfile profile) {
+        if (imageStream.getAsBool(PdfName.ImageMask) == Boolean.TRUE) {
+            // Stencil masks are painted in the fill colour and cannot be decoded into a picture
+            return null;
+        }
+        PdfNumber widthNumber = imageStream.getAsNumber(PdfName.Width);
+        PdfNumber heightNumber = imageStream.getAsNumber(PdfName.Height);
+        if (widthNumber == null || heightNumber == null) {
+            return null;
+        }
+        int width = widthNumber.intValue();
+        int height = heightNumber.intValue();
+
+        int targetWidth = width;
+        int targetHeight = height;
+        if (profile.getTargetDpi() > 0 && placed.getWidth() > 0 && placed.getHeight() > 0) {
+            // Keep the target resolution along both axes; only downsample when it saves a meaningful amount
+            double scale = Math.max(profile.getTargetDpi() * placed.getWidth() / 72 / width,
+                    profile.getTargetDpi() * placed.getHeight() / 72 / height);
+            if (scale < MIN_DOWNSAMPLE_SCALE) {
+                targetWidth = Math.max(1, (int) Math.round(width * scale));
+                targetHeight = Math.max(1, (int) Math.round(height * scale));
+            }
+        }
+
+        String colorSpaceFamily = colorSpaceFamily(imageStream.get(PdfName.ColorSpace));
+        if (targetWidth == width && !convertedColorSpaces.contains(colorSpaceFamily)) {
+            return null;
+        }
+
+        PdfNumber bitsPerComponent = imageStream.getAsNumber(PdfName.BitsPerComponent);
+        boolean bilevel = bitsPerComponent != null && bitsPerComponent.intValue() == 1
+                && (colorSpaceFamily == null || "DeviceGray".equals(colorSpaceFamily) || "CalGray".equals(colorSpaceFamily));
+        boolean jpegSource = hasFilter(imageStream, PdfName.DCTDecode);
+        return new Target(targetWidth, targetHeight, chooseEncoding(profile, bilevel, jpegSource), profile.getJpegQuality());
+    }
+
+    private static Target.Encoding chooseEncoding(ImageOptimizationProfile profile, boolean bilevel, boolean jpegSource) {
+        if (bilevel) {
+            return Target.Encoding.CCITT_G4;
+        }
+        switch (profile.getEncoder()) {
+            case JPEG:
+                return Target.Encoding.JPEG;
+            case FLATE:
+                return Target.Encoding.FLATE;
+            default:
+                return jpegSource ? Target.Encoding.JPEG : Target.Encoding.FLATE;
+        }
+    }
+
+    private static boolean hasFilter(PdfStream stream, PdfName filter) {
+        PdfObject filters = stream.get(PdfName.Filter);
+        if (filters instanceof PdfArray) {
+            return ((PdfArray) filters).contains(filter);
+        }
+        return filter.equals(filters);
+    }
+
+    private static String colorSpaceFamily(PdfObject colorSpace) {
+        if (colorSpace instanceof PdfName) {
+            return ((PdfName) colorSpace).getValue();
+        }
+        if (colorSpace instanceof PdfArray && !((PdfArray) colorSpace).isEmpty()) {
+            PdfArray array = (PdfArray) colorSpace;
+            PdfName family = array.getAsName(0);
+            // An indexed image is as unusual as its base colour space
+            if (PdfName.Indexed.equals(family) && array.size() > 1) {
+                return colorSpaceFamily(array.get(1));
+            }
+            return family != null ? family.getValue() : null;
+        }
+        return null;
+    }
+
+    /**
+     * Starts transcoding the given images in the order they will be taken.
+     */
+    public Session openSession(PdfInputSource input, List<ImageDataWithPosition> images) {
+        return new Session(input, images);
+    }
+
+    private static BufferedImage resample(BufferedImage bitmap, Target target) {
+        if (bitmap.getWidth() == target.getWidth() && bitmap.getHeight() == target.getHeight()) {
+            return bitmap;
+        }
+        boolean alpha = bitmap.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(target.getWidth(), target.getHeight(),
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(bitmap, 0, 0, target.getWidth(), target.getHeight(), null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static ImageData encode(BufferedImage bitmap, Target target) throws IOException {
+        switch (target.getEncoding()) {
+            case CCITT_G4: {
+                // TYPE_BYTE_BINARY packs rows MSB first with 0 as black; the G4 encoder takes 1 as black
+                BufferedImage binary = new BufferedImage(bitmap.getWidth(), bitmap.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+                Graphics2D graphics = binary.createGraphics();
+                try {
+                    graphics.drawImage(bitmap, 0, 0, null);
+                } finally {
+                    graphics.dispose();
+                }
+                byte[] packed = ((DataBufferByte) binary.getRaster().getDataBuffer()).getData();
+                for (int i = 0; i < packed.length; i++) {
+                    packed[i] = (byte) ~packed[i];
+                }
+                byte[] encoded = CCITTG4Encoder.compress(packed, binary.getWidth(), binary.getHeight());
+                return ImageDataFactory.create(binary.getWidth(), binary.getHeight(), false,
+                        RawImageData.CCITTG4, 0, encoded, null);
+            }
+            case JPEG: {
+                if (hasTransparency(bitmap)) {
+                    // JPEG has no alpha channel; keep the soft mask with Flate instead
+                    return ImageDataFactory.create(bitmap, null);
+                }
+                BufferedImage opaque = bitmap;
+                if (bitmap.getColorModel().hasAlpha() || bitmap.getType() == BufferedImage.TYPE_CUSTOM) {
+                    opaque = new BufferedImage(bitmap.getWidth(), bitmap.getHeight(), BufferedImage.TYPE_INT_RGB);
+                    Graphics2D graphics = opaque.createGraphics();
+                    try {
+                        graphics.drawImage(bitmap, 0, 0, null);
+                    } finally {
+                        graphics.dispose();
+                    }
+                }
+                ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+                    ImageWriteParam param = writer.getDefaultWriteParam();
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(target.getJpegQuality());
+                    writer.setOutput(imageOut);
+                    writer.write(null, new IIOImage(opaque, null, null), param);
+                } finally {
+                    writer.dispose();
+                }
+                // iText embeds JPEG data as DCTDecode without decoding it again
+                return ImageDataFactory.create(out.toByteArray());
+            }
+            default:
+                return ImageDataFactory.create(bitmap, null);
+        }
+    }
+
+    private static boolean hasTransparency(BufferedImage bitmap) {
+        WritableRaster alpha = bitmap.getAlphaRaster();
+        if (alpha == null) {
+            return false;
+        }
+        int opaque = (1 << alpha.getSampleModel().getSampleSize(0)) - 1;
+        int[] row = new int[alpha.getWidth()];
+        for (int y = 0; y < alpha.getHeight(); y++) {
+            alpha.getSamples(0, y, alpha.getWidth(), 1, 0, row);
+            for (int sample : row) {
+                if (sample != opaque) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pixel size and encoding an image is transcoded to.
+     */
+    public static class Target {
+        public enum Encoding {
+            FLATE, JPEG, CCITT_G4
+        }
+
+        private final int width;
+        private final int height;
+        private final Encoding encoding;
+        private final float jpegQuality;
+
+        public Target(int width, int height, Encoding encoding, float jpegQuality) {
+            this.width = width;
+            this.height = height;
+            this.encoding = encoding;
+            this.jpegQuality = jpegQuality;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public Encoding getEncoding() {
+            return encoding;
+        }
+
+        public float getJpegQuality() {
+            return jpegQuality;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + " " + encoding + (encoding == Encoding.JPEG ? " q" + jpegQuality : "");
+        }
+    }
+
+    public class Session implements AutoCloseable {
+        private final PdfInputSource input;
+        private final List<ImageDataWithPosition> images;
+        private final Map<ImageDataWithPosition, Future<PdfImageXObject>> inFlight = new HashMap<>();
+        private int nextToSubmit;
+
+        // PDFBox documents are not thread-safe, so every running task borrows one of its own
+        private final ConcurrentLinkedQueue<PDDocument> idleDocuments = new ConcurrentLinkedQueue<>();
+        private boolean closed;
+
+        private Session(PdfInputSource input, List<ImageDataWithPosition> images) {
+            this.input = input;
+            this.images = images;
+            submitAhead();
+        }
+
+        /**
+         * Waits for the transcoded image, or returns null if it could not be transcoded.
+         * The returned XObject belongs to no document yet.
+         */
+        public PdfImageXObject take(ImageDataWithPosition image) {
+            Future<PdfImageXObject> future = inFlight.remove(image);
+            try {
+                if (future == null) {
+                    // Not read ahead, e.g. taken out of order; transcode on the caller's thread
+                    return transcode(image);
+                }
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while transcoding image {}", image.getResourceName());
+                return null;
+            } catch (ExecutionException | IOException | RuntimeException e) {
+                logger.error("Failed to transcode image " + image.getResourceName(), e);
+                return null;
+            } finally {
+                submitAhead();
+            }
+        }
+
+        private void submitAhead() {
+            while (inFlight.size() < maxDecoded && nextToSubmit < images.size()) {
+                ImageDataWithPosition image = images.get(nextToSubmit++);
+                inFlight.put(image, executor.submit(() -> transcode(image)));
+            }
+        }
+
+        private PdfImageXObject transcode(ImageDataWithPosition image) throws IOException {
+            PDDocument document = idleDocuments.poll();
+            if (document == null) {
+                document = input.loadPdfBox();
+                synchronized (idleDocuments) {
+                    if (closed) {
+                        document.close();
+                        throw new IOException("Image transcoding session is closed");
+                    }
+                }
+            }
+            try {
+                COSBase object = document.getDocument()
+                        .getObjectFromPool(new COSObjectKey(image.getObjectNumber(), image.getGenerationNumber()))
+                        .getObject();
+                if (!(object instanceof COSStream)) {
+                    throw new IOException("Image object " + image.getObjectNumber() + " is not a stream");
+                }
+
+                // getImage() applies the colour space and any soft mask
+                BufferedImage bitmap = new PDImageXObject(new PDStream((COSStream) object), null).getImage();
+                Target target = image.getTranscodeTarget();
+                PdfImageXObject result = new PdfImageXObject(encode(resample(bitmap, target), target));
+                logger.info("Transcoded image {} on page {} from {}x{} to {}x{} as {}", image.getResourceName(), image.getPage(),
+                        bitmap.getWidth(), bitmap.getHeight(), target.getWidth(), target.getHeight(), target.getEncoding());
+                return result;
+            } finally {
+                release(document);
+            }
+        }
+
+        // A document still in use when the session closes is closed by its task, never under it
+        private void release(PDDocument document) throws IOException {
+            synchronized (idleDocuments) {
+                if (!closed) {
+                    idleDocuments.offer(document);
+                    return;
+                }
+            }
+            document.close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            inFlight.values().forEach(future -> future.cancel(true));
+            inFlight.clear();
+            synchronized (idleDocuments) {
+                closed = true;
+                PDDocument document;
+                while ((document = idleDocuments.poll()) != null) {
+                    document.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package se.enit.pdfaccessibilityservice;
+
+/**
+ * Thrown when the tags of a request reference something that does not exist or cannot be used.
+ * Answered with 400 and the message, before any processing is done.
+ */
+public class InvalidTagsException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public InvalidTagsException(String message) {
+        super(message);
+    }
+}
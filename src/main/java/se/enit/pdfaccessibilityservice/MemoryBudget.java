@@ -0,0 +1,181 @@
+package se.enit.pdfaccessibilityservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for PDF processing. Every request reserves its estimated memory from a shared budget
+ * before any real work is done, and returns it when finished. A request that does not fit waits in a
+ * bounded queue for a limited time; when the queue is full or the wait times out it is rejected with
+ * {@link AdmissionRejectedException}, so the caller can answer 429 instead of running out of heap.
+ */
+@Component
+public class MemoryBudget {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryBudget.class);
+
+    private final long budgetBytes;
+    private final int queueCapacity;
+    private final long maxWaitMillis;
+    private final long baseBytes;
+    private final long bytesPerFileByte;
+    private final long bytesPerPage;
+    private final long bytesPerTag;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition released = lock.newCondition();
+    private long reservedBytes;
+    private int waiting;
+
+    public MemoryBudget(@Value("${pdf.admission.budget-bytes:0}") long budgetBytes,
+                        @Value("${pdf.admission.queue-capacity:20}") int queueCapacity,
+                        @Value("${pdf.admission.max-wait-ms:10000}") long maxWaitMillis,
+                        @Value("${pdf.admission.base-bytes:16777216}") long baseBytes,
+                        @Value("${pdf.admission.bytes-per-file-byte:2}") long bytesPerFileByte,
+                        @Value("${pdf.admission.bytes-per-page:262144}") long bytesPerPage,
+                        @Value("${pdf.admission.bytes-per-tag:65536}") long bytesPerTag) {
+        // Default to 60% of the heap, leaving the rest to the framework and the shared caches
+        this.budgetBytes = budgetBytes > 0 ? budgetBytes : Runtime.getRuntime().maxMemory() / 10 * 6;
+        this.queueCapacity = queueCapacity;
+        this.maxWaitMillis = maxWaitMillis;
+        this.baseBytes = baseBytes;
+        this.bytesPerFileByte = bytesPerFileByte;
+        this.bytesPerPage = bytesPerPage;
+        this.bytesPerTag = bytesPerTag;
+        logger.info("PDF processing memory budget is {} MB", this.budgetBytes >> 20);
+    }
+
+    /**
+     * Estimated peak heap use of processing a document. Coarse on purpose; the weights are configurable.
+     */
+    public long estimate(long fileBytes, int pageCount, int tagCount) {
+        return baseBytes + fileBytes * bytesPerFileByte + pageCount * bytesPerPage + tagCount * bytesPerTag;
+    }
+
+    /**
+     * Reserves {@code bytes}, waiting in the bounded queue for up to the configured time if the budget is in use.
+     *
+     * @throws AdmissionRejectedException if the queue is full or the wait timed out
+     */
+    public Reservation reserve(long bytes) {
+        return reserve(bytes, false);
+    }
+
+    /**
+     * Reserves {@code bytes}, waiting as long as it takes. For callers that are already bounded
+     * themselves, such as the job workers.
+     */
+    public Reservation reserveWaiting(long bytes) {
+        return reserve(bytes, true);
+    }
+
+    private Reservation reserve(long requestedBytes, boolean waitIndefinitely) {
+        // A document larger than the whole budget may still run, but only on its own
+        long bytes = Math.min(requestedBytes, budgetBytes);
+        lock.lock();
+        try {
+            if (!fits(bytes)) {
+                if (!waitIndefinitely && waiting >= queueCapacity) {
+                    throw reject(bytes, "queue full");
+                }
+                waiting++;
+                try {
+                    long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                    while (!fits(bytes)) {
+                        if (waitIndefinitely) {
+                            released.await();
+                        } else if (remaining <= 0) {
+                            throw reject(bytes, "timed out");
+                        } else {
+                            remaining = released.awaitNanos(remaining);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw reject(bytes, "interrupted");
+                } finally {
+                    waiting--;
+                }
+            }
+            reservedBytes += bytes;
+            logger.info("Reserved {} MB for PDF processing, {} of {} MB in use", bytes >> 20,
+                    reservedBytes >> 20, budgetBytes >> 20);
+            return new Reservation(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long bytes) {
+        return reservedBytes + bytes <= budgetBytes;
+    }
+
+    private AdmissionRejectedException reject(long bytes, String reason) {
+        logger.warn("Rejected PDF processing needing {} MB ({}), {} of {} MB in use, {} waiting",
+                bytes >> 20, reason, reservedBytes >> 20, budgetBytes >> 20, waiting);
+        // A request queued now would have waited this long
+        long retryAfterSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(maxWaitMillis));
+        return new AdmissionRejectedException("Not enough memory to process the PDF now (" + reason + ")", retryAfterSeconds);
+    }
+
+    private void release(long bytes) {
+        lock.lock();
+        try {
+            reservedBytes -= bytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public long getReservedBytes() {
+        lock.lock();
+        try {
+            return reservedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Memory reserved for one request, returned to the budget on close.
+     */
+    public class Reservation implements AutoCloseable {
+        private final long bytes;
+        private boolean closed;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(bytes);
+            }
+        }
+    }
+}
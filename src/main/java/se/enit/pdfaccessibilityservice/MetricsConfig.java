@@ -0,0 +1,19 @@
+package se.enit.pdfaccessibilityservice;
+
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Backstop for {@link PdfMetrics#templateTag}: past the stored templates plus "none" and "other",
+     * new template tag values are dropped instead of creating more series.
+     */
+    @Bean
+    public MeterFilter pdfTemplateTagLimit(@Value("${pdf.metrics.max-templates:50}") int maxTemplates) {
+        return MeterFilter.maximumAllowableTags("pdf.processing", "template", maxTemplates + 2, MeterFilter.deny());
+    }
+}
@@ -0,0 +1,160 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import org.json.JSONArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Read-only extraction stage. Pages with text regions or image tags are spread over the extraction pool;
+ * every worker opens its own document over the shared mapped input, so no document is touched by two threads.
+ * The results are handed to the single-threaded assembly in {@link PdfService}.
+ */
+@Component
+public class PageExtractionStage {
+    private static final Logger logger = LoggerFactory.getLogger(PageExtractionStage.class);
+
+    private final ThreadPoolExecutor executor;
+    private final ImageExtractor imageExtractor = new ImageExtractor();
+    private final ImageTranscoder imageTranscoder;
+
+    public PageExtractionStage(@Qualifier("pdfExtractionExecutor") ThreadPoolExecutor pdfExtractionExecutor,
+                               ImageTranscoder imageTranscoder) {
+        this.executor = pdfExtractionExecutor;
+        this.imageTranscoder = imageTranscoder;
+    }
+
+    /**
+     * Indexes the text of every page that has extraction regions and matches the image tags of
+     * every page that has any to the images drawn there.
+     */
+    public ExtractedPages extract(PdfInputSource input, int pageCount, Map<Integer, List<Rectangle>> extractionRegions,
+                                  JSONArray imageTags, ImageOptimizationProfile imageProfile) throws IOException {
+        ExtractedPages extracted = new ExtractedPages();
+        Map<Integer, List<Integer>> imageTagsByPage = imageTagsByPage(imageTags);
+        List<Integer> pageNumbers = pagesToExtract(pageCount, extractionRegions.keySet(), imageTagsByPage.keySet());
+        if (pageNumbers.isEmpty()) {
+            return extracted;
+        }
+        // Sized by the pages with work, so untagged pages neither open documents nor occupy workers
+        int workers = Math.min(executor.getMaximumPoolSize(), pageNumbers.size());
+        long start = System.currentTimeMillis();
+
+        if (workers == 1) {
+            extractPages(input, pageNumbers, 0, 1, extractionRegions, imageTags, imageTagsByPage, imageProfile, extracted);
+        } else {
+            // Interleave pages so expensive sections of a document are shared between workers
+            List<Future<?>> futures = new ArrayList<>();
+            for (int worker = 0; worker < workers; worker++) {
+                int firstPageIndex = worker;
+                futures.add(executor.submit(() -> {
+                    extractPages(input, pageNumbers, firstPageIndex, workers, extractionRegions, imageTags, imageTagsByPage,
+                            imageProfile, extracted);
+                    return null;
+                }));
+            }
+            awaitAll(futures);
+        }
+
+        logger.info("Extracted {} of {} pages on {} workers in {} ms", pageNumbers.size(), pageCount, workers,
+                System.currentTimeMillis() - start);
+        return extracted;
+    }
+
+    // 1-based numbers of the pages in the document with text regions or image tags, in page order
+    private static List<Integer> pagesToExtract(int pageCount, Set<Integer> textPages, Set<Integer> imagePages) {
+        Set<Integer> pages = new TreeSet<>();
+        pages.addAll(textPages);
+        pages.addAll(imagePages);
+        pages.removeIf(pageNumber -> pageNumber < 1 || pageNumber > pageCount);
+        return new ArrayList<>(pages);
+    }
+
+    private void extractPages(PdfInputSource input, List<Integer> pageNumbers, int firstPageIndex, int stride,
+                              Map<Integer, List<Rectangle>> extractionRegions, JSONArray imageTags,
+                              Map<Integer, List<Integer>> imageTagsByPage, ImageOptimizationProfile imageProfile,
+                              ExtractedPages extracted) throws IOException {
+        try (PdfDocument pdfDocument = new PdfDocument(input.newReader())) {
+            for (int pageIndex = firstPageIndex; pageIndex < pageNumbers.size(); pageIndex += stride) {
+                int pageNumber = pageNumbers.get(pageIndex);
+
+                List<Rectangle> regions = extractionRegions.get(pageNumber);
+                if (regions != null) {
+                    extracted.textIndexes.put(pageNumber, PageTextIndex.build(pdfDocument.getPage(pageNumber), regions));
+                }
+
+                List<Integer> tagIndexes = imageTagsByPage.get(pageNumber);
+                if (tagIndexes != null) {
+                    extracted.images.putAll(imageExtractor.matchPageImages(
+                            pdfDocument.getPage(pageNumber), pageNumber, tagIndexes, imageTags,
+                            (imageStream, placed) -> imageTranscoder.plan(imageStream, placed, imageProfile)));
+                }
+            }
+        }
+    }
+
+    // Indexes of the image tags on each 1-based page, in tag order
+    private static Map<Integer, List<Integer>> imageTagsByPage(JSONArray imageTags) {
+        Map<Integer, List<Integer>> tagsByPage = new HashMap<>();
+        for (int i = 0; i < imageTags.length(); i++) {
+            tagsByPage.computeIfAbsent(imageTags.getJSONObject(i).optInt("page", 1), page -> new ArrayList<>()).add(i);
+        }
+        return tagsByPage;
+    }
+
+    private void awaitAll(List<Future<?>> futures) throws IOException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting pages");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Page extraction failed", cause);
+        }
+    }
+
+    /**
+     * Results of the extraction stage: text indexes by 1-based page number,
+     * matched images by index into the image tag array.
+     */
+    public static class ExtractedPages {
+        private final Map<Integer, PageTextIndex> textIndexes = new ConcurrentHashMap<>();
+        private final Map<Integer, ImageDataWithPosition> images = new ConcurrentHashMap<>();
+
+        public Map<Integer, PageTextIndex> getTextIndexes() {
+            return Collections.unmodifiableMap(textIndexes);
+        }
+
+        public Map<Integer, ImageDataWithPosition> getImages() {
+            return Collections.unmodifiableMap(images);
+        }
+    }
+}
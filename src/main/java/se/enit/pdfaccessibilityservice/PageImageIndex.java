@@ -0,0 +1,199 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Matrix;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.geom.Vector;
+import com.itextpdf.kernel.pdf.PdfIndirectReference;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.canvas.parser.EventType;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import com.itextpdf.kernel.pdf.canvas.parser.data.IEventData;
+import com.itextpdf.kernel.pdf.canvas.parser.data.ImageRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Records where every image XObject is drawn on a page, from the image CTM of the render events,
+ * and finds the placement that best overlaps a tagged rectangle through a uniform grid.
+ */
+public class PageImageIndex implements IEventListener {
+    private static final Logger logger = LoggerFactory.getLogger(PageImageIndex.class);
+    private static final int GRID_SIZE = 8;
+
+    // Text showing operators; image placement does not depend on them and decoding glyphs is costly
+    private static final String[] IGNORED_OPERATORS = {"Tj", "TJ", "'", "\""};
+
+    private final List<Rectangle> bounds = new ArrayList<>();
+    private final List<String> resourceNames = new ArrayList<>();
+    private final List<Integer> objectNumbers = new ArrayList<>();
+    private final List<Integer> generationNumbers = new ArrayList<>();
+
+    private Rectangle extent;
+    private float cellWidth;
+    private float cellHeight;
+    private List<List<Integer>> cells;
+
+    private PageImageIndex() {
+    }
+
+    public static PageImageIndex build(PdfPage page) {
+        PageImageIndex index = new PageImageIndex();
+        PdfCanvasProcessor processor = new PdfCanvasProcessor(index);
+        for (String operator : IGNORED_OPERATORS) {
+            processor.registerContentOperator(operator, (p, o, operands) -> {
+            });
+        }
+        processor.processPageContent(page);
+        index.buildGrid();
+        logger.info("Indexed {} image placements on page", index.size());
+        return index;
+    }
+
+    @Override
+    public void eventOccurred(IEventData data, EventType type) {
+        if (type != EventType.RENDER_IMAGE) {
+            return;
+        }
+        ImageRenderInfo renderInfo = (ImageRenderInfo) data;
+        if (renderInfo.isInline()) {
+            // Inline images have no object of their own to copy
+            return;
+        }
+        PdfIndirectReference reference = renderInfo.getImage().getPdfObject().getIndirectReference();
+        if (reference == null) {
+            return;
+        }
+
+        PdfName resourceName = renderInfo.getImageResourceName();
+        bounds.add(unitSquareBounds(renderInfo.getImageCtm()));
+        resourceNames.add(resourceName != null ? resourceName.getValue() : null);
+        objectNumbers.add(reference.getObjNumber());
+        generationNumbers.add(reference.getGenNumber());
+    }
+
+    @Override
+    public Set<EventType> getSupportedEvents() {
+        return Collections.singleton(EventType.RENDER_IMAGE);
+    }
+
+    public int size() {
+        return bounds.size();
+    }
+
+    public Rectangle getBounds(int placement) {
+        return bounds.get(placement);
+    }
+
+    public String getResourceName(int placement) {
+        return resourceNames.get(placement);
+    }
+
+    public int getObjectNumber(int placement) {
+        return objectNumbers.get(placement);
+    }
+
+    public int getGenerationNumber(int placement) {
+        return generationNumbers.get(placement);
+    }
+
+    /**
+     * Returns the placement not yet in {@code taken} with the largest overlap with {@code region},
+     * or -1 if no free placement overlaps it.
+     */
+    public int bestOverlap(Rectangle region, BitSet taken) {
+        if (bounds.isEmpty()) {
+            return -1;
+        }
+        int fromCol = clampCol(region.getLeft());
+        int toCol = clampCol(region.getRight());
+        int fromRow = clampRow(region.getBottom());
+        int toRow = clampRow(region.getTop());
+
+        int best = -1;
+        float bestArea = 0;
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int col = fromCol; col <= toCol; col++) {
+                for (int placement : cells.get(row * GRID_SIZE + col)) {
+                    if (taken.get(placement)) {
+                        continue;
+                    }
+                    float area = overlapArea(region, bounds.get(placement));
+                    // Ties go to the earlier placement in content order
+                    if (area > bestArea || (area > 0 && area == bestArea && placement < best)) {
+                        best = placement;
+                        bestArea = area;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private void buildGrid() {
+        cells = new ArrayList<>(GRID_SIZE * GRID_SIZE);
+        for (int cell = 0; cell < GRID_SIZE * GRID_SIZE; cell++) {
+            cells.add(new ArrayList<>(1));
+        }
+        if (bounds.isEmpty()) {
+            return;
+        }
+
+        extent = bounds.get(0).clone();
+        for (Rectangle rect : bounds) {
+            extent = Rectangle.getCommonRectangle(extent, rect);
+        }
+        cellWidth = Math.max(extent.getWidth() / GRID_SIZE, 1f);
+        cellHeight = Math.max(extent.getHeight() / GRID_SIZE, 1f);
+
+        for (int placement = 0; placement < bounds.size(); placement++) {
+            Rectangle rect = bounds.get(placement);
+            for (int row = clampRow(rect.getBottom()); row <= clampRow(rect.getTop()); row++) {
+                for (int col = clampCol(rect.getLeft()); col <= clampCol(rect.getRight()); col++) {
+                    cells.get(row * GRID_SIZE + col).add(placement);
+                }
+            }
+        }
+    }
+
+    // Images are drawn into the unit square, so its transformed corners give the placed bounds
+    private static Rectangle unitSquareBounds(Matrix ctm) {
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int corner = 0; corner < 4; corner++) {
+            Vector point = new Vector(corner & 1, corner >> 1, 1).cross(ctm);
+            minX = Math.min(minX, point.get(0));
+            minY = Math.min(minY, point.get(1));
+            maxX = Math.max(maxX, point.get(0));
+            maxY = Math.max(maxY, point.get(1));
+        }
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    private static float overlapArea(Rectangle a, Rectangle b) {
+        float width = Math.min(a.getRight(), b.getRight()) - Math.max(a.getLeft(), b.getLeft());
+        float height = Math.min(a.getTop(), b.getTop()) - Math.max(a.getBottom(), b.getBottom());
+        return width > 0 && height > 0 ? width * height : 0;
+    }
+
+    private int clampCol(float x) {
+        return clamp((int) Math.floor((x - extent.getLeft()) / cellWidth));
+    }
+
+    private int clampRow(float y) {
+        return clamp((int) Math.floor((y - extent.getBottom()) / cellHeight));
+    }
+
+    private static int clamp(int cell) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, cell));
+    }
+}
@@ -0,0 +1,155 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.canvas.parser.EventType;
+import com.itextpdf.kernel.pdf.canvas.parser.data.IEventData;
+import com.itextpdf.kernel.pdf.canvas.parser.data.TextRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Captures every text chunk on a page in a single content stream pass and answers
+ * region queries from a uniform grid, so each page is parsed once per request no matter
+ * how many text elements are tagged on it.
+ */
+public class PageTextIndex implements IEventListener {
+    private static final Logger logger = LoggerFactory.getLogger(PageTextIndex.class);
+    private static final int GRID_SIZE = 32;
+
+    private final TextChunkBuffer chunks = new TextChunkBuffer();
+    private final float[] box = new float[4];
+
+    // Grid over the extent of all chunks, stored as cell offsets into a flat array of chunk indices
+    private float minX;
+    private float minY;
+    private float cellWidth;
+    private float cellHeight;
+    private int[] cellStart;
+    private int[] cellChunks;
+
+    private PageTextIndex() {
+    }
+
+    /**
+     * Parses the page content once and builds the index.
+     *
+     * @param regions regions that will be queried; form XObjects outside all of them are skipped.
+     *                An empty list keeps every form XObject.
+     */
+    public static PageTextIndex build(PdfPage page, List<Rectangle> regions) {
+        PageTextIndex index = new PageTextIndex();
+        TextOnlyCanvasProcessor processor = new TextOnlyCanvasProcessor(index, regions);
+        processor.processPageContent(page);
+        index.buildGrid();
+        logger.debug("Indexed {} text chunks on page, skipped {} form XObjects", index.chunks.size(), processor.getPrunedForms());
+        return index;
+    }
+
+    @Override
+    public void eventOccurred(IEventData data, EventType type) {
+        if (type != EventType.RENDER_TEXT) {
+            return;
+        }
+        TextRenderInfo renderInfo = (TextRenderInfo) data;
+        TextChunkBuffer.descentBox(renderInfo, box);
+        chunks.add(renderInfo, box);
+    }
+
+    @Override
+    public Set<EventType> getSupportedEvents() {
+        return Collections.singleton(EventType.RENDER_TEXT);
+    }
+
+    /**
+     * Feeds every chunk that may intersect the region to the listener, in content stream order.
+     * The listener applies its own exact intersection test.
+     */
+    public void replay(Rectangle region, CustomTextRenderListener listener) {
+        if (chunks.size() == 0) {
+            return;
+        }
+        int fromCol = clamp((int) Math.floor((region.getX() - minX) / cellWidth));
+        int toCol = clamp((int) Math.floor((region.getX() + region.getWidth() - minX) / cellWidth));
+        int fromRow = clamp((int) Math.floor((region.getY() - minY) / cellHeight));
+        int toRow = clamp((int) Math.floor((region.getY() + region.getHeight() - minY) / cellHeight));
+
+        // A BitSet both de-duplicates chunks spanning several cells and restores content order
+        BitSet candidates = new BitSet(chunks.size());
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int col = fromCol; col <= toCol; col++) {
+                int cell = row * GRID_SIZE + col;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    candidates.set(cellChunks[i]);
+                }
+            }
+        }
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            listener.addTextChunk(chunks, i);
+        }
+    }
+
+    public TextChunkBuffer getChunks() {
+        return chunks;
+    }
+
+    private void buildGrid() {
+        cellStart = new int[GRID_SIZE * GRID_SIZE + 1];
+        if (chunks.size() == 0) {
+            cellChunks = new int[0];
+            return;
+        }
+
+        minX = Float.MAX_VALUE;
+        minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < chunks.size(); i++) {
+            minX = Math.min(minX, chunks.getX(i));
+            minY = Math.min(minY, chunks.getY(i));
+            maxX = Math.max(maxX, chunks.getX(i) + chunks.getWidth(i));
+            maxY = Math.max(maxY, chunks.getY(i) + chunks.getHeight(i));
+        }
+        cellWidth = Math.max((maxX - minX) / GRID_SIZE, 1f);
+        cellHeight = Math.max((maxY - minY) / GRID_SIZE, 1f);
+
+        // First pass counts chunks per cell, second pass fills the flat array
+        int[] counts = new int[GRID_SIZE * GRID_SIZE];
+        for (int i = 0; i < chunks.size(); i++) {
+            forEachCell(i, cell -> counts[cell]++);
+        }
+        for (int cell = 0; cell < counts.length; cell++) {
+            cellStart[cell + 1] = cellStart[cell] + counts[cell];
+        }
+        cellChunks = new int[cellStart[counts.length]];
+        int[] fill = new int[counts.length];
+        for (int i = 0; i < chunks.size(); i++) {
+            int chunkIndex = i;
+            forEachCell(i, cell -> cellChunks[cellStart[cell] + fill[cell]++] = chunkIndex);
+        }
+    }
+
+    private void forEachCell(int chunk, IntConsumer action) {
+        int fromCol = clamp((int) ((chunks.getX(chunk) - minX) / cellWidth));
+        int toCol = clamp((int) ((chunks.getX(chunk) + chunks.getWidth(chunk) - minX) / cellWidth));
+        int fromRow = clamp((int) ((chunks.getY(chunk) - minY) / cellHeight));
+        int toRow = clamp((int) ((chunks.getY(chunk) + chunks.getHeight(chunk) - minY) / cellHeight));
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int col = fromCol; col <= toCol; col++) {
+                action.accept(row * GRID_SIZE + col);
+            }
+        }
+    }
+
+    private int clamp(int cell) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, cell));
+    }
+}
@@ -0,0 +1,34 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-request cache of {@link PageTextIndex} instances. Each input page is parsed at most once,
+ * in text-only mode, pruning form XObjects that lie outside every region requested on that page.
+ */
+public class PageTextIndexes {
+    private final PdfDocument inputPdfDocument;
+    private final Map<Integer, List<Rectangle>> extractionRegions;
+    private final Map<Integer, PageTextIndex> indexes;
+
+    /**
+     * @param prebuilt indexes already built by the extraction stage; missing pages are built on demand
+     */
+    public PageTextIndexes(PdfDocument inputPdfDocument, Map<Integer, List<Rectangle>> extractionRegions,
+                           Map<Integer, PageTextIndex> prebuilt) {
+        this.inputPdfDocument = inputPdfDocument;
+        this.extractionRegions = extractionRegions;
+        this.indexes = new HashMap<>(prebuilt);
+    }
+
+    public PageTextIndex forPage(int pageNumber) {
+        return indexes.computeIfAbsent(pageNumber, n -> PageTextIndex.build(
+                inputPdfDocument.getPage(n), extractionRegions.getOrDefault(n, Collections.emptyList())));
+    }
+}
@@ -2,8 +2,10 @@ package se.enit.pdfaccessibilityservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class PdfAccessibilityServiceApplication {
 
     public static void main(String[] args) {
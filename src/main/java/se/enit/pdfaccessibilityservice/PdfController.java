@@ -1,15 +1,28 @@
 package se.enit.pdfaccessibilityservice;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
 
 @RestController
 @RequestMapping("/create-accessible-pdf")
@@ -23,20 +36,74 @@ public class PdfController {
     }
 
     @PostMapping
-    public ResponseEntity<byte[]> createAccessiblePdf(
+    public ResponseEntity<StreamingResponseBody> createAccessiblePdf(
             @RequestParam("pdf") MultipartFile pdfFile,
             @RequestParam("tags") String tags,
-            @RequestParam(value = "images", required = false) MultipartFile[] images) {
+            @RequestParam(value = "images", required = false) MultipartFile[] images,
+            HttpServletRequest request) {
 
         logger.info("Received request to create accessible PDF");
+        Path outputFile = null;
         try {
-            byte[] pdfBytes = pdfService.processPdf(pdfFile, tags);
+            // Write to a temp file first so a failure can still be reported as a 500,
+            // then stream it to the client without holding the document on the heap
+            outputFile = Files.createTempFile("accessible-", ".pdf");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(outputFile))) {
+                pdfService.processPdf(pdfFile, tags, out);
+            }
+
+            Path result = outputFile;
+            // The body only runs if the async request gets that far; a timeout, a disconnect or a rejected
+            // task ends it without, so the file is also deleted when the async request completes in any way
+            WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(result, new CallableProcessingInterceptor() {
+                @Override
+                public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                    deleteQuietly(result);
+                }
+            });
+            StreamingResponseBody body = responseStream -> {
+                try {
+                    Files.copy(result, responseStream);
+                } finally {
+                    Files.deleteIfExists(result);
+                }
+            };
             return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_PDF)
                     .header("Content-Disposition", "attachment; filename=accessible_output.pdf")
-                    .body(pdfBytes);
+                    .body(body);
         } catch (IOException e) {
             logger.error("Error while creating accessible PDF", e);
+            deleteQuietly(outputFile);
             return ResponseEntity.status(500).body(null);
+        } catch (InvalidTagsException e) {
+            logger.warn("Rejecting request: {}", e.getMessage());
+            deleteQuietly(outputFile);
+            byte[] error = new JSONObject().put("error", e.getMessage()).toString().getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.status(400)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(responseStream -> responseStream.write(error));
+        } catch (AdmissionRejectedException e) {
+            logger.warn("Rejecting request: {}", e.getMessage());
+            deleteQuietly(outputFile);
+            return ResponseEntity.status(429)
+                    .header("Retry-After", String.valueOf(e.getRetryAfterSeconds()))
+                    .body(null);
+        } catch (RuntimeException e) {
+            deleteQuietly(outputFile);
+            throw e;
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not delete temporary output {}, deleting it on exit", file, e);
+            file.toFile().deleteOnExit();
         }
     }
 }
@@ -0,0 +1,150 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.source.IRandomAccessSource;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.ReaderProperties;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadMemoryMappedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An input PDF spooled to disk once and memory-mapped. Any number of iText readers and PDFBox documents
+ * can be opened over it, from any thread, and pages are faulted in by the OS instead of copied to the heap.
+ */
+public class PdfInputSource implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PdfInputSource.class);
+
+    private final Path file;
+    private final boolean deleteOnClose;
+    private final long length;
+    // Dropped on close, so the mapping can be released once the last reader over it is gone
+    private volatile MappedByteBuffer buffer;
+
+    private PdfInputSource(Path file, boolean deleteOnClose) throws IOException {
+        this.file = file;
+        this.deleteOnClose = deleteOnClose;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("PDF input larger than 2 GB is not supported: " + file);
+            }
+            this.length = channel.size();
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+    }
+
+    /**
+     * Moves the upload into a temp file and maps it. The temp file is deleted on close.
+     */
+    public static PdfInputSource spool(MultipartFile upload) throws IOException {
+        Path file = Files.createTempFile("pdf-input-", ".pdf");
+        try {
+            upload.transferTo(file);
+            return new PdfInputSource(file, true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Maps a PDF that is already on disk. The file is left in place on close.
+     */
+    public static PdfInputSource open(Path file) throws IOException {
+        return new PdfInputSource(file, false);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public PdfReader newReader() throws IOException {
+        PdfReader reader = new PdfReader(new MappedSource(mapped().duplicate()), new ReaderProperties());
+        reader.setUnethicalReading(true);
+        return reader;
+    }
+
+    public PDDocument loadPdfBox() throws IOException {
+        mapped();
+        return Loader.loadPDF(new RandomAccessReadMemoryMappedFile(file));
+    }
+
+    private MappedByteBuffer mapped() throws IOException {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            throw new IOException("PDF input is closed: " + file);
+        }
+        return mapped;
+    }
+
+    /**
+     * Drops the mapping and deletes a spooled file. Every reader and document opened over this
+     * source must be closed first. Never throws, so it cannot mask the outcome of the processing.
+     */
+    @Override
+    public void close() {
+        buffer = null;
+        if (deleteOnClose) {
+            try {
+                Files.deleteIfExists(file);
+                logger.debug("Deleted spooled input {}", file);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not delete spooled input {}, deleting it on exit", file, e);
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * iText source over a shared mapping using absolute reads only. Closing it must not unmap
+     * the buffer, since other readers may still use it.
+     */
+    private static class MappedSource implements IRandomAccessSource {
+        private final ByteBuffer buffer;
+
+        MappedSource(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int get(long position) {
+            if (position >= buffer.capacity()) {
+                return -1;
+            }
+            return buffer.get((int) position) & 0xff;
+        }
+
+        @Override
+        public int get(long position, byte[] bytes, int off, int len) {
+            if (position >= buffer.capacity()) {
+                return -1;
+            }
+            int count = (int) Math.min(len, buffer.capacity() - position);
+            buffer.get((int) position, bytes, off, count);
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State of an asynchronous PDF job. Input and output live on disk next to each other.
+ */
+public class PdfJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final String id;
+    private final Path inputFile;
+    private final Path tagsFile;
+    private final Path outputFile;
+    private final Instant createdAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    // Number of downloads streaming the result, or -1 once the job has expired
+    private final AtomicInteger resultReaders = new AtomicInteger();
+
+    public PdfJob(String id, Path inputFile, Path tagsFile, Path outputFile) {
+        this.id = id;
+        this.inputFile = inputFile;
+        this.tagsFile = tagsFile;
+        this.outputFile = outputFile;
+        this.createdAt = Instant.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @JsonIgnore
+    public Path getInputFile() {
+        return inputFile;
+    }
+
+    @JsonIgnore
+    public Path getTagsFile() {
+        return tagsFile;
+    }
+
+    @JsonIgnore
+    public Path getOutputFile() {
+        return outputFile;
+    }
+
+    void markRunning() {
+        status = Status.RUNNING;
+    }
+
+    void markDone() {
+        finishedAt = Instant.now();
+        status = Status.DONE;
+    }
+
+    void markFailed(String error) {
+        this.error = error;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+
+    /**
+     * Keeps the result from expiring until {@link #releaseResult()}. Returns false if it already has.
+     */
+    boolean acquireResult() {
+        while (true) {
+            int readers = resultReaders.get();
+            if (readers < 0) {
+                return false;
+            }
+            if (resultReaders.compareAndSet(readers, readers + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void releaseResult() {
+        resultReaders.decrementAndGet();
+    }
+
+    /**
+     * Marks the job expired unless its result is being downloaded.
+     */
+    boolean expire() {
+        return resultReaders.compareAndSet(0, -1);
+    }
+}
@@ -0,0 +1,98 @@
+package se.enit.pdfaccessibilityservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/create-accessible-pdf/jobs")
+public class PdfJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfJobController.class);
+    private final PdfJobService pdfJobService;
+
+    public PdfJobController(PdfJobService pdfJobService) {
+        this.pdfJobService = pdfJobService;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> submitJob(
+            @RequestParam("pdf") MultipartFile pdfFile,
+            @RequestParam("tags") String tags) {
+
+        logger.info("Received request to queue accessible PDF job");
+        try {
+            PdfJob job = pdfJobService.submit(pdfFile, tags);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/create-accessible-pdf/jobs/" + job.getId()))
+                    .body(job);
+        } catch (InvalidTagsException e) {
+            logger.warn("Rejecting PDF job: {}", e.getMessage());
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            logger.warn("PDF job queue is full, rejecting request");
+            return ResponseEntity.status(503).header("Retry-After", "30").build();
+        } catch (IOException e) {
+            logger.error("Error while queueing PDF job", e);
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<PdfJob> getJobStatus(@PathVariable String id) {
+        return pdfJobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(404).body(null));
+    }
+
+    @GetMapping("/{id}/result")
+    public ResponseEntity<Resource> getJobResult(@PathVariable String id) {
+        PdfJob job = pdfJobService.getJob(id).orElse(null);
+        if (job == null) {
+            return ResponseEntity.status(404).body(null);
+        }
+        if (job.getStatus() != PdfJob.Status.DONE) {
+            logger.warn("Result requested for PDF job {} in state {}", id, job.getStatus());
+            return ResponseEntity.status(409).body(null);
+        }
+        Optional<InputStream> result;
+        try {
+            result = pdfJobService.openResult(job);
+        } catch (IOException e) {
+            logger.error("Could not open the result of PDF job {}", id, e);
+            return ResponseEntity.status(500).build();
+        }
+        if (result.isEmpty()) {
+            return ResponseEntity.status(404).body(null);
+        }
+        // Spring closes the stream once the response is written, which lets the job expire again
+        Resource body = new InputStreamResource(result.get()) {
+            @Override
+            public long contentLength() throws IOException {
+                return Files.size(job.getOutputFile());
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_PDF)
+                .header("Content-Disposition", "attachment; filename=accessible_output.pdf")
+                .body(body);
+    }
+}
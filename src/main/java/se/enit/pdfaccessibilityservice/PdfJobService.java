@@ -0,0 +1,198 @@
+package se.enit.pdfaccessibilityservice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs PDF processing as background jobs on a bounded worker pool. Uploads and results are spooled
+ * to a local directory and removed once a finished job is older than the configured TTL. Jobs are
+ * only kept in memory, so files left in the directory by an earlier run are removed at startup.
+ */
+@Service
+public class PdfJobService {
+    private static final Logger logger = LoggerFactory.getLogger(PdfJobService.class);
+
+    private final PdfService pdfService;
+    private final ThreadPoolExecutor executor;
+    private final Path jobDirectory;
+    private final Duration ttl;
+    private final Map<String, PdfJob> jobs = new ConcurrentHashMap<>();
+
+    public PdfJobService(PdfService pdfService,
+                         @Qualifier("pdfJobExecutor") ThreadPoolExecutor pdfJobExecutor,
+                         @Value("${pdf.jobs.dir:${java.io.tmpdir}/pdf-jobs}") String jobDirectory,
+                         @Value("${pdf.jobs.ttl-minutes:60}") long ttlMinutes) throws IOException {
+        this.pdfService = pdfService;
+        this.executor = pdfJobExecutor;
+        this.jobDirectory = Files.createDirectories(Paths.get(jobDirectory));
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        deleteLeftoverFiles();
+    }
+
+    private void deleteLeftoverFiles() throws IOException {
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(jobDirectory, "*.{in.pdf,tags.json,out.pdf}")) {
+            for (Path file : files) {
+                deleteFile(file);
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} files left in {} by an earlier run", deleted, jobDirectory);
+        }
+    }
+
+    /**
+     * Spools the upload to disk and queues it.
+     *
+     * @throws RejectedExecutionException if the job queue is full
+     * @throws InvalidTagsException       if the tags reference a font that is not registered
+     */
+    public PdfJob submit(MultipartFile pdfFile, String tags) throws IOException {
+        if (pdfFile.isEmpty()) {
+            throw new IOException("No PDF file provided.");
+        }
+        pdfService.validateTags(tags);
+
+        String id = UUID.randomUUID().toString();
+        PdfJob job = new PdfJob(id,
+                jobDirectory.resolve(id + ".in.pdf"),
+                jobDirectory.resolve(id + ".tags.json"),
+                jobDirectory.resolve(id + ".out.pdf"));
+
+        try {
+            pdfFile.transferTo(job.getInputFile());
+            Files.writeString(job.getTagsFile(), tags, StandardCharsets.UTF_8);
+        } catch (IOException | RuntimeException e) {
+            // A partly written input, such as on a full disk, is not in the map for expiry to find
+            deleteFiles(job);
+            throw e;
+        }
+
+        jobs.put(id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            deleteFiles(job);
+            throw e;
+        }
+
+        logger.info("Queued PDF job {} ({} bytes, {} jobs waiting)", id, pdfFile.getSize(), executor.getQueue().size());
+        return job;
+    }
+
+    public Optional<PdfJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Opens the result of a finished job. The job does not expire until the stream is closed.
+     * Returns empty if the job has expired in the meantime.
+     */
+    public Optional<InputStream> openResult(PdfJob job) throws IOException {
+        if (!job.acquireResult()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new FilterInputStream(Files.newInputStream(job.getOutputFile())) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        try {
+                            super.close();
+                        } finally {
+                            job.releaseResult();
+                        }
+                    }
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            job.releaseResult();
+            throw e;
+        }
+    }
+
+    private void run(PdfJob job) {
+        job.markRunning();
+        logger.info("Started PDF job {}", job.getId());
+        try {
+            String tags = Files.readString(job.getTagsFile(), StandardCharsets.UTF_8);
+
+            try (PdfInputSource input = PdfInputSource.open(job.getInputFile());
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(job.getOutputFile()))) {
+                pdfService.processPdf(input, tags, out);
+            }
+
+            job.markDone();
+            logger.info("Finished PDF job {}", job.getId());
+        } catch (Exception e) {
+            logger.error("PDF job {} failed", job.getId(), e);
+            deleteFile(job.getOutputFile());
+            // The exception message may describe internals; clients look in the log by job id
+            job.markFailed("Processing failed");
+        } finally {
+            deleteFile(job.getInputFile());
+            deleteFile(job.getTagsFile());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pdf.jobs.cleanup-interval-ms:60000}")
+    public void expireJobs() {
+        Instant cutoff = Instant.now().minus(ttl);
+        jobs.values().removeIf(job -> {
+            Instant finishedAt = job.getFinishedAt();
+            if (finishedAt != null && finishedAt.isBefore(cutoff)) {
+                if (!job.expire()) {
+                    logger.debug("Keeping expired PDF job {} while its result is downloaded", job.getId());
+                    return false;
+                }
+                deleteFiles(job);
+                logger.info("Expired PDF job {}", job.getId());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void deleteFiles(PdfJob job) {
+        deleteFile(job.getInputFile());
+        deleteFile(job.getTagsFile());
+        deleteFile(job.getOutputFile());
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete job file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package se.enit.pdfaccessibilityservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import se.enit.pdfaccessibilityservice.templates.TemplateRepository;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the processing pipeline, exposed through Actuator. Each request records into its own
+ * {@link Recording}, which publishes the time spent per phase and the pages, elements, cells, images
+ * and bytes it handled when it closes, tagged with the template and the outcome of the request.
+ * The template name comes from the client, so only names of stored templates are used as tag values,
+ * at most {@code pdf.metrics.max-templates} of them; any other name is tagged {@value #TEMPLATE_OTHER}.
+ * The stored names are refreshed in the background, so tagging a request never waits for MongoDB.
+ */
+@Component
+public class PdfMetrics {
+
+    public static final String PHASE_PARSE = "parse";
+    public static final String PHASE_PAGE_COPY = "page-copy";
+    public static final String PHASE_EXTRACTION = "extraction";
+    public static final String PHASE_BOOKMARKS = "bookmarks";
+    public static final String PHASE_IMAGES = "images";
+    public static final String PHASE_TEXT = "text";
+    public static final String PHASE_TABLES = "tables";
+    public static final String PHASE_SERIALISATION = "serialisation";
+
+    public static final String TEMPLATE_NONE = "none";
+    public static final String TEMPLATE_OTHER = "other";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_REJECTED = "rejected";
+    public static final String OUTCOME_INVALID = "invalid";
+    public static final String OUTCOME_ERROR = "error";
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfMetrics.class);
+
+    private final MeterRegistry registry;
+    private final TemplateRepository templateRepository;
+    private final int maxTemplates;
+    // Names found in the template repository, the only client values used as template tags
+    private volatile Set<String> knownTemplates = Set.of();
+
+    public PdfMetrics(MeterRegistry registry, FontProgramCache fontProgramCache, MemoryBudget memoryBudget,
+                      TemplateRepository templateRepository,
+                      @Value("${pdf.metrics.max-templates:50}") int maxTemplates) {
+        this.registry = registry;
+        this.templateRepository = templateRepository;
+        this.maxTemplates = maxTemplates;
+
+        FunctionCounter.builder("pdf.fonts.cache.requests", fontProgramCache, FontProgramCache::getHits)
+                .tag("result", "hit")
+                .description("Font program cache lookups")
+                .register(registry);
+        FunctionCounter.builder("pdf.fonts.cache.requests", fontProgramCache, FontProgramCache::getMisses)
+                .tag("result", "miss")
+                .description("Font program cache lookups")
+                .register(registry);
+        FunctionCounter.builder("pdf.fonts.cache.evictions", fontProgramCache, FontProgramCache::getEvictions)
+                .register(registry);
+        Gauge.builder("pdf.fonts.cache.size", fontProgramCache, FontProgramCache::getCachedBytes)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("pdf.admission.reserved", memoryBudget, MemoryBudget::getReservedBytes)
+                .baseUnit("bytes")
+                .description("Memory reserved by the requests being processed")
+                .register(registry);
+        Gauge.builder("pdf.admission.budget", memoryBudget, MemoryBudget::getBudgetBytes)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    public Recording start() {
+        return new Recording();
+    }
+
+    /**
+     * Reloads the names of the stored templates, the first {@code pdf.metrics.max-templates} in name order.
+     * If MongoDB cannot be reached the names loaded before are kept.
+     */
+    @Scheduled(fixedDelayString = "${pdf.metrics.template-refresh-ms:300000}")
+    public void refreshTemplateNames() {
+        try {
+            Set<String> names = Set.copyOf(templateRepository.findTemplateNames(maxTemplates));
+            if (!names.equals(knownTemplates)) {
+                logger.info("Tagging metrics of {} stored templates", names.size());
+            }
+            knownTemplates = names;
+        } catch (RuntimeException e) {
+            logger.warn("Could not load the template names, keeping the {} loaded before: {}", knownTemplates.size(),
+                    e.toString());
+        }
+    }
+
+    /**
+     * The tag value for a template name sent by the client: the name itself if it is one of the stored
+     * templates loaded by {@link #refreshTemplateNames()}, otherwise {@value #TEMPLATE_OTHER}.
+     */
+    String templateTag(String templateName) {
+        if (templateName == null || templateName.isEmpty()) {
+            return TEMPLATE_NONE;
+        }
+        return knownTemplates.contains(templateName) ? templateName : TEMPLATE_OTHER;
+    }
+
+    /**
+     * What one request did. Used by one thread at a time, like the {@link ProcessingContext} that carries it.
+     */
+    public class Recording implements AutoCloseable {
+        private final long startNanos = System.nanoTime();
+        private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+        private String template = TEMPLATE_NONE;
+        private String outcome = OUTCOME_ERROR;
+        private long pages;
+        private long elements;
+        private long cells;
+        private long images;
+        private long bytesIn;
+        private long bytesOut;
+        private boolean closed;
+
+        private Recording() {
+        }
+
+        /**
+         * Adds the time since {@code phaseStartNanos}, a {@link System#nanoTime()} reading, to the phase.
+         */
+        public void recordPhase(String phase, long phaseStartNanos) {
+            phaseNanos.merge(phase, System.nanoTime() - phaseStartNanos, Long::sum);
+        }
+
+        public void setTemplate(String templateName) {
+            this.template = templateTag(templateName);
+        }
+
+        public void setOutcome(String outcome) {
+            this.outcome = outcome;
+        }
+
+        public void addPages(long count) {
+            pages += count;
+        }
+
+        public void addElements(long count) {
+            elements += count;
+        }
+
+        public void addCells(long count) {
+            cells += count;
+        }
+
+        public void addImages(long count) {
+            images += count;
+        }
+
+        public void addBytesIn(long count) {
+            bytesIn += count;
+        }
+
+        /**
+         * Wraps the output so the bytes written to it are counted.
+         */
+        public OutputStream countBytesOut(OutputStream outputStream) {
+            return new FilterOutputStream(outputStream) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    bytesOut++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    bytesOut += len;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Tags tags = Tags.of("template", template, "outcome", outcome);
+
+            Timer.builder("pdf.processing")
+                    .description("Processing of a whole document")
+                    .tags(tags)
+                    .register(registry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            phaseNanos.forEach((phase, nanos) -> Timer.builder("pdf.processing.phase")
+                    .description("Processing time per pipeline phase")
+                    .tags(tags)
+                    .tag("phase", phase)
+                    .register(registry)
+                    .record(nanos, TimeUnit.NANOSECONDS));
+
+            increment("pdf.processing.pages", tags, pages, null);
+            increment("pdf.processing.elements", tags, elements, null);
+            increment("pdf.processing.table.cells", tags, cells, null);
+            increment("pdf.processing.images", tags, images, null);
+            increment("pdf.processing.input", tags, bytesIn, "bytes");
+            increment("pdf.processing.output", tags, bytesOut, "bytes");
+        }
+
+        private void increment(String name, Tags tags, long amount, String baseUnit) {
+            Counter.builder(name)
+                    .tags(tags)
+                    .baseUnit(baseUnit)
+                    .register(registry)
+                    .increment(amount);
+        }
+    }
+}
@@ -2,20 +2,13 @@ package se.enit.pdfaccessibilityservice;
 
 import com.itextpdf.io.exceptions.IOException;
 import com.itextpdf.io.font.FontProgram;
-import com.itextpdf.io.font.FontProgramFactory;
-import com.itextpdf.io.font.PdfEncodings;
 import com.itextpdf.io.font.constants.StandardFonts;
-import com.itextpdf.io.image.ImageData;
-import com.itextpdf.io.image.ImageDataFactory;
-import com.itextpdf.io.source.ByteArrayOutputStream;
 import com.itextpdf.kernel.colors.Color;
 import com.itextpdf.kernel.colors.ColorConstants;
 import com.itextpdf.kernel.font.PdfFont;
-import com.itextpdf.kernel.font.PdfFontFactory;
 import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.*;
 import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
-import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
 import com.itextpdf.kernel.pdf.navigation.PdfDestination;
 import com.itextpdf.kernel.pdf.navigation.PdfExplicitDestination;
 import com.itextpdf.kernel.pdf.tagging.IStructureNode;
@@ -25,23 +18,22 @@ import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.Image;
 import com.itextpdf.layout.element.Paragraph;
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.cos.COSName;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDResources;
-import org.apache.pdfbox.pdmodel.graphics.PDXObject;
-import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 public class PdfService {
@@ -49,7 +41,32 @@ public class PdfService {
 
 
     private final TableProcessor tableProcessor = new TableProcessor();
-    public byte[] processPdf(MultipartFile pdfFile, String tags) throws IOException, java.io.IOException {
+    private final ImageExtractor imageExtractor = new ImageExtractor();
+    private final PageExtractionStage pageExtractionStage;
+    private final ImageTranscoder imageTranscoder;
+    private final FontProgramCache fontProgramCache;
+    private final FontRegistry fontRegistry;
+    private final FontStore fontStore;
+    private final MemoryBudget memoryBudget;
+    private final ThreadPoolExecutor processingExecutor;
+    private final PdfMetrics pdfMetrics;
+
+    public PdfService(PageExtractionStage pageExtractionStage, ImageTranscoder imageTranscoder,
+                      FontProgramCache fontProgramCache, FontRegistry fontRegistry, FontStore fontStore,
+                      MemoryBudget memoryBudget,
+                      @Qualifier("pdfProcessingExecutor") ThreadPoolExecutor processingExecutor,
+                      PdfMetrics pdfMetrics) {
+        this.pageExtractionStage = pageExtractionStage;
+        this.imageTranscoder = imageTranscoder;
+        this.fontProgramCache = fontProgramCache;
+        this.fontRegistry = fontRegistry;
+        this.fontStore = fontStore;
+        this.memoryBudget = memoryBudget;
+        this.processingExecutor = processingExecutor;
+        this.pdfMetrics = pdfMetrics;
+    }
+
+    public void processPdf(MultipartFile pdfFile, String tags, OutputStream outputStream) throws IOException, java.io.IOException {
         logger.info("Received tags: {}", tags);
 
         if (pdfFile.isEmpty()) {
@@ -62,11 +79,154 @@ public class PdfService {
         logger.info("Received PDF file: {}", pdfFile.getOriginalFilename());
         logger.info("File size: {} bytes", pdfFile.getSize());
 
-        // Parse input JSON
+        // Spool the upload to disk once; iText and PDFBox both read the mapped file
+        try (PdfMetrics.Recording recording = pdfMetrics.start();
+             PdfInputSource input = PdfInputSource.spool(pdfFile)) {
+            JSONObject jsonObject = parseTags(tags, input, recording);
+
+            // Admit before queueing for the carrier pool, so a request that does not fit gets a fast 429
+            try (MemoryBudget.Reservation reservation = memoryBudget.reserve(estimateMemory(input, jsonObject))) {
+                logger.debug("Reserved {} bytes for {}", reservation.getBytes(), pdfFile.getOriginalFilename());
+                processOnCarrierPool(input, jsonObject, outputStream, recording);
+            } catch (AdmissionRejectedException e) {
+                recording.setOutcome(PdfMetrics.OUTCOME_REJECTED);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Processes an already received PDF, e.g. one spooled to disk by {@link PdfJobService}.
+     * The result is written straight to {@code outputStream}, which is closed when done.
+     * Waits as long as needed for memory; the job queue already bounds how many callers wait.
+     */
+    public void processPdf(PdfInputSource input, String tags, OutputStream outputStream) throws IOException, java.io.IOException {
+        try (PdfMetrics.Recording recording = pdfMetrics.start()) {
+            JSONObject jsonObject = parseTags(tags, input, recording);
+            try (MemoryBudget.Reservation reservation = memoryBudget.reserveWaiting(estimateMemory(input, jsonObject))) {
+                logger.debug("Reserved {} bytes for a spooled PDF of {} bytes", reservation.getBytes(), input.length());
+                processPdf(input, jsonObject, outputStream, recording);
+            }
+        }
+    }
+
+    private JSONObject parseTags(String tags, PdfInputSource input, PdfMetrics.Recording recording) {
+        recording.addBytesIn(input.length());
+        long parseStart = System.nanoTime();
         JSONObject jsonObject = new JSONObject(tags);
+        recording.recordPhase(PdfMetrics.PHASE_PARSE, parseStart);
+        recording.setTemplate(jsonObject.optString("templateName"));
+        try {
+            validateTags(jsonObject);
+        } catch (InvalidTagsException e) {
+            recording.setOutcome(PdfMetrics.OUTCOME_INVALID);
+            throw e;
+        }
+        return jsonObject;
+    }
 
+    /**
+     * Checks the tags before a job is queued for them, so the client learns of a bad reference right away.
+     *
+     * @throws InvalidTagsException if the tags reference a font that is not registered, or hold
+     *                              invalid image optimisation options
+     */
+    public void validateTags(String tags) {
+        validateTags(new JSONObject(tags));
+    }
+
+    // A font deleted after this check still falls back in resolveFont
+    private void validateTags(JSONObject jsonObject) {
+        ImageOptimizationProfile.fromJson(jsonObject.optJSONObject("imageOptimization"));
+
+        JSONArray taggedElements = jsonObject.optJSONArray("taggingInformation");
+        if (taggedElements == null) {
+            return;
+        }
+        for (int i = 0; i < taggedElements.length(); i++) {
+            JSONObject element = taggedElements.optJSONObject(i);
+            if (element == null) {
+                continue;
+            }
+            String fontRef = element.optString("fontRef", "");
+            if (!fontRef.isEmpty() && !fontStore.contains(fontRef)) {
+                throw new InvalidTagsException("Font " + fontRef + " of element " + element.optString("id")
+                        + " is not registered");
+            }
+        }
+    }
+
+    // Only the cross-reference table and page tree root are read to count the pages
+    private long estimateMemory(PdfInputSource input, JSONObject jsonObject) throws java.io.IOException {
+        try (PdfDocument document = new PdfDocument(input.newReader())) {
+            return memoryBudget.estimate(input.length(), document.getNumberOfPages(),
+                    jsonObject.getJSONArray("taggingInformation").length());
+        }
+    }
+
+    // Spooling is I/O and stays on the request thread, which may be virtual; the CPU-bound work runs on the bounded carrier pool
+    private void processOnCarrierPool(PdfInputSource input, JSONObject jsonObject, OutputStream outputStream,
+                                      PdfMetrics.Recording recording) throws java.io.IOException {
+        AtomicBoolean started = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(1);
+        Future<?> processing = processingExecutor.submit(() -> {
+            if (!started.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                processPdf(input, jsonObject, outputStream, recording);
+                return null;
+            } finally {
+                finished.countDown();
+            }
+        });
+        try {
+            processing.get();
+        } catch (InterruptedException e) {
+            // iText ignores interrupts, so a started task keeps using the input and the reservation the caller
+            // releases once this returns; wait for it. A task that has not started yet never will.
+            if (!started.compareAndSet(false, true)) {
+                processing.cancel(true);
+                awaitUninterruptibly(finished);
+            } else {
+                processing.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while processing the PDF");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof java.io.IOException) {
+                throw (java.io.IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                // Restored by the caller once the task is done
+            }
+        }
+    }
+
+    private void processPdf(PdfInputSource input, JSONObject jsonObject, OutputStream outputStream,
+                            PdfMetrics.Recording recording) throws IOException, java.io.IOException {
         // Extract the taggingInformation array
         JSONArray taggedElements = jsonObject.getJSONArray("taggingInformation");
+        recording.addElements(taggedElements.length());
+
+        // Optional downsampling and recompression of the images
+        ImageOptimizationProfile imageProfile = ImageOptimizationProfile.fromJson(jsonObject.optJSONObject("imageOptimization"));
 
         Set<String> elementIds = new HashSet<>();
         for (int i = 0; i < taggedElements.length(); i++) {
@@ -87,18 +247,13 @@ public class PdfService {
         JSONArray filteredImages = filterImages(taggedElements);
         JSONArray sortedImages = sortJsonByImageName(filteredImages);
 
-        Map<Integer, List<ImageDataWithPosition>> pageImagesMap;
-
-        // Convert InputStream to byte[]
-        byte[] pdfBytes = pdfFile.getInputStream().readAllBytes();
-
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-            PdfReader reader = new PdfReader(pdfFile.getInputStream());
-            reader.setUnethicalReading(true);
+        Map<Integer, ImageDataWithPosition> matchedImages;
 
-            PdfWriter writer = new PdfWriter(byteArrayOutputStream, new WriterProperties().addXmpMetadata());
-            PdfDocument inputPdfDocument = new PdfDocument(reader);
-            PdfDocument outputPdfDocument = new PdfDocument(writer);
+        // The input document is closed on failure too, before the caller closes the input source under it
+        try (OutputStream pdfOutputStream = recording.countBytesOut(outputStream);
+             PdfDocument inputPdfDocument = new PdfDocument(input.newReader())) {
+            PdfWriter writer = new PdfWriter(pdfOutputStream, new WriterProperties().addXmpMetadata());
+            CidSetPdfDocument outputPdfDocument = new CidSetPdfDocument(writer);
 
             outputPdfDocument.setTagged();
             outputPdfDocument.getCatalog().setLang(new PdfString("sv-SE"));
@@ -111,6 +266,8 @@ public class PdfService {
             info.setSubject("PDF/UA compliant document");
 
             // Copy pages and remove original content
+            long pageCopyStart = System.nanoTime();
+            recording.addPages(inputPdfDocument.getNumberOfPages());
             for (int i = 1; i <= inputPdfDocument.getNumberOfPages(); i++) {
                 PdfPage inputPage = inputPdfDocument.getPage(i);
 
@@ -121,21 +278,40 @@ public class PdfService {
                 // Remove the original content
                 removeOriginalContent(outputPage);
             }
+            recording.recordPhase(PdfMetrics.PHASE_PAGE_COPY, pageCopyStart);
 
-            // Extract images using PDFBox and store them
-            try (PDDocument pdfBoxDocument = Loader.loadPDF(pdfBytes)) {
-                pageImagesMap = extractAndStoreImages(pdfBoxDocument, sortedImages);
-            }
+            // Index page text and extract images concurrently, each worker on its own documents
+            long extractionStart = System.nanoTime();
+            Map<Integer, List<Rectangle>> extractionRegions = collectExtractionRegions(inputPdfDocument, taggedElements);
+            PageExtractionStage.ExtractedPages extractedPages = pageExtractionStage.extract(
+                    input, inputPdfDocument.getNumberOfPages(), extractionRegions, sortedImages, imageProfile);
+            matchedImages = extractedPages.getImages();
+            recording.addImages(matchedImages.size());
+            recording.recordPhase(PdfMetrics.PHASE_EXTRACTION, extractionStart);
+
+            // Text chunks per input page, shared by all elements on that page
+            PageTextIndexes pageTextIndexes = new PageTextIndexes(inputPdfDocument, extractionRegions,
+                    extractedPages.getTextIndexes());
 
             PdfStructElem parentStructElem = new PdfStructElem(outputPdfDocument, PdfName.Document);
             outputPdfDocument.getStructTreeRoot().addKid(parentStructElem);
 
-            try (Document document = new Document(outputPdfDocument)) {
+            // Closed explicitly once complete, so serialisation is timed and a failed document is never written out
+            Document document = new Document(outputPdfDocument);
+            try (ImageTranscoder.Session imageTranscodes = imageTranscoder.openSession(input, transcodedImages(matchedImages))) {
+                // All state of this request, so concurrent requests never share any
+                ProcessingContext context = new ProcessingContext(input, inputPdfDocument, outputPdfDocument,
+                        document, pageTextIndexes, imageTranscodes, recording);
+
                 // Create bookmarks for the document
+                long bookmarksStart = System.nanoTime();
                 Map<String, PdfOutline> bookmarks = createBookmarks(outputPdfDocument, taggedElements);
+                recording.recordPhase(PdfMetrics.PHASE_BOOKMARKS, bookmarksStart);
 
                 // Reinsert and tag images
-                reinsertAndTagImages(outputPdfDocument, pageImagesMap, document, sortedImages, bookmarks);
+                long imagesStart = System.nanoTime();
+                reinsertAndTagImages(context, matchedImages, sortedImages, bookmarks);
+                recording.recordPhase(PdfMetrics.PHASE_IMAGES, imagesStart);
 
                 // Process text and table elements
                 for (int i = 0; i < taggedElements.length(); i++) {
@@ -143,25 +319,29 @@ public class PdfService {
                     String type = element.getString("type");
 
                     if (type.equalsIgnoreCase("text")) {
-                        extractAndReinsertText(inputPdfDocument, outputPdfDocument, element, parentStructElem, document, bookmarks);
+                        long textStart = System.nanoTime();
+                        extractAndReinsertText(context, element, parentStructElem, bookmarks);
+                        recording.recordPhase(PdfMetrics.PHASE_TEXT, textStart);
                     } else if (type.equalsIgnoreCase("table")) {
+                        long tableStart = System.nanoTime();
                         // Convert JSONObject to TaggingInfo for table processing
                         se.enit.pdfaccessibilityservice.TaggingInfo tableInfo = convertJsonToTaggingInfo(element);
                         logger.info("Starting to process element {} of type {}", i, element.getString("type"));
 
-                        tableProcessor.processTable(inputPdfDocument, outputPdfDocument, tableInfo,
-                                parentStructElem, document, bookmarks);
+                        tableProcessor.processTable(context, tableInfo, parentStructElem, bookmarks);
+                        recording.recordPhase(PdfMetrics.PHASE_TABLES, tableStart);
                     }
                 }
 
                 logPdfDetails(outputPdfDocument);
 
-                inputPdfDocument.close();
+                long serialisationStart = System.nanoTime();
                 document.close();
                 outputPdfDocument.close();
+                recording.recordPhase(PdfMetrics.PHASE_SERIALISATION, serialisationStart);
+                recording.setOutcome(PdfMetrics.OUTCOME_SUCCESS);
 
-                logger.info("PDF processing complete. Returning the generated PDF.");
-                return byteArrayOutputStream.toByteArray();
+                logger.info("PDF processing complete. Generated PDF written to output stream.");
             }
         }
     }
@@ -291,9 +471,10 @@ public class PdfService {
 
 
 
-    public void reinsertAndTagImages(PdfDocument pdfDocument,
-                                     Map<Integer, List<ImageDataWithPosition>> pageImagesMap,
-                                     Document document, JSONArray tags,  Map<String, PdfOutline> bookmarks) {
+    public void reinsertAndTagImages(ProcessingContext context, Map<Integer, ImageDataWithPosition> matchedImages,
+                                     JSONArray tags,  Map<String, PdfOutline> bookmarks) {
+        PdfDocument pdfDocument = context.getOutputDocument();
+        Document document = context.getDocument();
 
         float cmToPoints = 28.3465f; // Conversion from cm to points
 
@@ -321,46 +502,70 @@ public class PdfService {
                     logger.info("Linked bookmark for image ID: " + id + " on page: " + (pageNumber + 1));
                 }
 
-                if (pageImagesMap.containsKey(pageNumber)) {
-                    List<ImageDataWithPosition> imagesOnPage = pageImagesMap.get(pageNumber);
-                    if (i < imagesOnPage.size()) {
-                        ImageDataWithPosition imageData = imagesOnPage.get(i);
-                        PdfPage pdfPage = pdfDocument.getPage(pageNumber + 1);
+                // Tags are paired with the image placement they overlap in the extraction stage
+                ImageDataWithPosition imageData = matchedImages.get(i);
+                if (imageData != null) {
+                    PdfPage pdfPage = pdfDocument.getPage(pageNumber + 1);
 
-                        float pageHeight = pdfPage.getPageSize().getHeight();
-                        float adjustedY = pageHeight - y; // Flip coordinate system for iText
+                    // A repeated image is written once and referenced from every page
+                    PdfImageXObject imageXObject = context.getWrittenImage(imageData.getContentKey());
+                    if (imageXObject == null) {
+                        // Copy the original encoded image rather than decoding it, unless it must be transcoded
+                        imageXObject = imageData.isTranscoded()
+                                ? context.getImageTranscodes().take(imageData)
+                                : imageExtractor.copyToDocument(context.getInputDocument(), imageData, pdfDocument);
+                        if (imageXObject == null) {
+                            continue;
+                        }
+                        context.putWrittenImage(imageData.getContentKey(), imageXObject);
+                    }
 
-                        // Create structure element for tagging the image
-                        PdfStructElem structElem = new PdfStructElem(pdfDocument, PdfName.Figure);
-                        structElem.put(PdfName.Alt, new PdfString(altText));
+                    float pageHeight = pdfPage.getPageSize().getHeight();
+                    float adjustedY = pageHeight - y; // Flip coordinate system for iText
 
-                        // Flip the image vertically
-                        Image image = new Image(imageData.getImage())
-                                .setFixedPosition(pageNumber + 1, x, adjustedY) // Adjust for top-left origin
-                                .scaleAbsolute(-width, height); // Scale to fit width/height
+                    // Create structure element for tagging the image
+                    PdfStructElem structElem = new PdfStructElem(pdfDocument, PdfName.Figure);
+                    structElem.put(PdfName.Alt, new PdfString(altText));
 
-                        // Apply the flipping transformation
-                        image.setRotationAngle(Math.PI); // Rotate 180 degrees to flip vertically
+                    // Flip the image vertically
+                    Image image = new Image(imageXObject)
+                            .setFixedPosition(pageNumber + 1, x, adjustedY) // Adjust for top-left origin
+                            .scaleAbsolute(-width, height); // Scale to fit width/height
 
-                        // Set accessibility properties for the image
-                        image.getAccessibilityProperties().setRole("Figure");
-                        image.getAccessibilityProperties().setAlternateDescription(altText);
+                    // Apply the flipping transformation
+                    image.setRotationAngle(Math.PI); // Rotate 180 degrees to flip vertically
 
-                        // Add the image to the document
-                        document.add(image);
+                    // Set accessibility properties for the image
+                    image.getAccessibilityProperties().setRole("Figure");
+                    image.getAccessibilityProperties().setAlternateDescription(altText);
 
-                        logger.info("Reinserted and tagged vertically flipped image on page " + (pageNumber + 1));
-                    } else {
-                        logger.warn("No image found for tag " + i + " on page " + (pageNumber + 1));
-                    }
+                    // Add the image to the document
+                    document.add(image);
+
+                    // Write the image out now instead of keeping it until the document is closed
+                    imageXObject.flush();
+
+                    logger.info("Reinserted and tagged vertically flipped image on page " + (pageNumber + 1));
                 } else {
-                    logger.warn("No images mapped for page " + (pageNumber + 1));
+                    logger.warn("No image found for tag " + i + " on page " + (pageNumber + 1));
                 }
             }
         }
     }
 
 
+    // Images to transcode, once per content key, in the tag order reinsertAndTagImages takes them
+    private List<ImageDataWithPosition> transcodedImages(Map<Integer, ImageDataWithPosition> matchedImages) {
+        List<ImageDataWithPosition> images = new ArrayList<>();
+        Set<String> contentKeys = new HashSet<>();
+        new TreeMap<>(matchedImages).values().forEach(image -> {
+            if (image.isTranscoded() && contentKeys.add(image.getContentKey())) {
+                images.add(image);
+            }
+        });
+        return images;
+    }
+
     private JSONArray filterImages(JSONArray tags) {
         JSONArray filteredImages = new JSONArray();
 
@@ -392,80 +597,6 @@ public class PdfService {
 
 
 
-    private Map<Integer, List<ImageDataWithPosition>> extractAndStoreImages(PDDocument document, JSONArray tags) {
-        Map<Integer, List<ImageDataWithPosition>> pageImagesMap = new HashMap<>();
-        int pageIndex = 0;
-
-        for (PDPage page : document.getPages()) {
-            List<ImageDataWithPosition> imageList = new ArrayList<>();
-            PDResources resources = page.getResources();
-            float pageHeight = page.getMediaBox().getHeight();
-
-            for (COSName cosName : resources.getXObjectNames()) {
-                try {
-                    PDXObject xObject = resources.getXObject(cosName);
-                    if (xObject instanceof PDImageXObject) {
-                        PDImageXObject pdImageXObject = (PDImageXObject) xObject;
-
-                        BufferedImage bufferedImage = pdImageXObject.getImage();
-                        if (bufferedImage == null) {
-                            logger.warn("Image extraction failed for COSName: " + cosName.getName());
-                            continue;
-                        }
-
-                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        ImageIO.write(bufferedImage, "png", baos);
-                        byte[] imageBytes = baos.toByteArray();
-
-                        ImageData imageData = ImageDataFactory.create(imageBytes);
-                        PdfImageXObject pdfImageXObject = new PdfImageXObject(imageData);
-
-                        // Flip Y-coordinate
-                        Rectangle position = new Rectangle(
-                                0,
-                                pageHeight - pdfImageXObject.getHeight(),
-                                pdfImageXObject.getWidth(),
-                                pdfImageXObject.getHeight()
-                        );
-
-                        // Match JSON tag by page and position (or another unique property like ID)
-                        String matchingId = findMatchingId(tags, pageIndex + 1, pdfImageXObject);
-                        if (matchingId != null) {
-                            ImageDataWithPosition imageDataWithPosition = new ImageDataWithPosition(
-                                    pdfImageXObject,
-                                    pageIndex + 1,
-                                    position,
-                                    matchingId
-                            );
-                            imageList.add(imageDataWithPosition);
-                            logger.info("Extracted image matched with ID: " + matchingId + " on page " + (pageIndex + 1));
-                        } else {
-                            logger.warn("No matching JSON tag found for extracted image on page " + (pageIndex + 1));
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.error("Failed to extract image", e);
-                }
-            }
-            pageImagesMap.put(pageIndex, imageList);
-            pageIndex++;
-        }
-        return pageImagesMap;
-    }
-
-    private String findMatchingId(JSONArray tags, int pageNumber, PdfImageXObject pdfImageXObject) {
-        for (int i = 0; i < tags.length(); i++) {
-            JSONObject tag = tags.getJSONObject(i);
-            if (tag.getInt("page") == pageNumber) {
-                // Add further logic to match by dimensions, position, or other criteria
-                return tag.getString("id");
-            }
-        }
-        return null;
-    }
-
-
-
     private void logPdfDetails(PdfDocument pdfDocument) {
         // Log document language
         PdfString lang = pdfDocument.getCatalog().getLang();
@@ -576,7 +707,12 @@ public class PdfService {
         return sectionMap;
     }
 
-    private void extractAndReinsertText(PdfDocument inputPdfDocument, PdfDocument outputPdfDocument, JSONObject element, PdfStructElem parentStructElem, Document document,  Map<String, PdfOutline> bookmarks) throws IOException, java.io.IOException {
+    private void extractAndReinsertText(ProcessingContext context, JSONObject element, PdfStructElem parentStructElem, Map<String, PdfOutline> bookmarks) throws IOException, java.io.IOException {
+        PdfDocument inputPdfDocument = context.getInputDocument();
+        CidSetPdfDocument outputPdfDocument = context.getOutputDocument();
+        Document document = context.getDocument();
+        PageTextIndexes pageTextIndexes = context.getPageTextIndexes();
+        DocumentFonts documentFonts = context.getFonts();
         float cmToPoints = 28.3465f;  // Conversion from cm to points
         int pageNumber = element.optInt("page", 1);
 
@@ -604,8 +740,7 @@ public class PdfService {
         Rectangle extractionRegion = new Rectangle(x, pageHeight - y - height, width, height);
         CustomTextRenderListener listener = new CustomTextRenderListener(extractionRegion);
 
-        PdfCanvasProcessor processor = new PdfCanvasProcessor(listener);
-        processor.processPageContent(inputPage);
+        pageTextIndexes.forPage(pageNumber).replay(extractionRegion, listener);
 
         // Preprocess Y-coordinates to detect line breaks
         listener.preprocessYCoordinates();
@@ -615,7 +750,7 @@ public class PdfService {
         String fontName = listener.getExtractedFontName();
         float fontSize = listener.getExtractedFontSize();
         Color fontColor = listener.getExtractedFontColor();
-        Rectangle combinedBoundingBox = calculateCombinedBoundingBox(listener.getTextWithPositionList());
+        Rectangle combinedBoundingBox = listener.getCombinedBoundingBox();
 
         // Log canonical format
         logger.info("Canonical Text for Extraction: '" + extractedText);
@@ -640,10 +775,10 @@ public class PdfService {
             // Reinsert text with extracted font properties
             PdfFont font;
             try {
-                font = resolveFont(element.optString("font", ""));
+                font = resolveFont(element, documentFonts);
             } catch (IOException e) {
-                logger.warn("Font not recognized, using Helvetica as fallback.");
-                font = PdfFontFactory.createFont(StandardFonts.HELVETICA, PdfEncodings.IDENTITY_H);
+                logger.warn("Font not recognized: {}", e.getMessage());
+                font = fallbackFont(element, documentFonts);
             }
 
             if (bookmark != null) {
@@ -663,6 +798,7 @@ public class PdfService {
             p.getAccessibilityProperties().setRole(tag);
 
             document.add(p);
+            outputPdfDocument.recordGlyphs(font, extractedText);
 
 
 
@@ -673,87 +809,104 @@ public class PdfService {
     }
 
 
-    // Utility method to calculate combined bounding box
-// Utility method to combine two rectangles
-    private Rectangle combineBoundingBoxes(Rectangle r1, Rectangle r2) {
-        if (r1 == null) return r2;
-        if (r2 == null) return r1;
-
-        float x = Math.min(r1.getX(), r2.getX());
-        float y = Math.min(r1.getY(), r2.getY());
-        float width = Math.max(r1.getX() + r1.getWidth(), r2.getX() + r2.getWidth()) - x;
-        float height = Math.max(r1.getY() + r1.getHeight(), r2.getY() + r2.getHeight()) - y;
+    /**
+     * Collects the extraction regions of all text and table elements per page, in PDF coordinates,
+     * so page parsing can skip form XObjects that none of them can reach.
+     */
+    private Map<Integer, List<Rectangle>> collectExtractionRegions(PdfDocument inputPdfDocument, JSONArray taggedElements) {
+        float cmToPoints = 28.3465f;
+        Map<Integer, List<Rectangle>> regions = new HashMap<>();
 
-        return new Rectangle(x, y, width, height);
-    }
+        for (int i = 0; i < taggedElements.length(); i++) {
+            JSONObject element = taggedElements.getJSONObject(i);
+            String type = element.getString("type");
+            if (!type.equalsIgnoreCase("text") && !type.equalsIgnoreCase("table")) {
+                continue;
+            }
+            int pageNumber = element.optInt("page", 1);
+            if (pageNumber < 1 || pageNumber > inputPdfDocument.getNumberOfPages()) {
+                continue;
+            }
 
-    // Updated method to calculate the overall bounding box of extracted text
-    private Rectangle calculateCombinedBoundingBox(List<CustomTextRenderListener.TextWithPosition> textWithPositionList) {
-        if (textWithPositionList.isEmpty()) {
-            return new Rectangle(0, 0, 0, 0);
-        }
+            float x = (float) element.optDouble("x", 0) * cmToPoints;
+            float y = (float) element.optDouble("y", 0) * cmToPoints;
+            float width = (float) element.optDouble("width", 100) * cmToPoints;
+            float height = (float) element.optDouble("height", 12) * cmToPoints;
 
-        Rectangle combinedBoundingBox = textWithPositionList.get(0).getBoundingBox();
+            // Table cells are placed from the row and column positions, which may exceed the declared size
+            if (type.equalsIgnoreCase("table") && element.has("rowPositions") && element.has("colPositions")) {
+                width = Math.max(width, maxPosition(element.getJSONArray("colPositions")) * cmToPoints);
+                height = Math.max(height, maxPosition(element.getJSONArray("rowPositions")) * cmToPoints);
+            }
 
-        for (CustomTextRenderListener.TextWithPosition textPosition : textWithPositionList) {
-            combinedBoundingBox = combineBoundingBoxes(combinedBoundingBox, textPosition.getBoundingBox());
+            float pageHeight = inputPdfDocument.getPage(pageNumber).getPageSize().getHeight();
+            regions.computeIfAbsent(pageNumber, k -> new ArrayList<>())
+                    .add(new Rectangle(x, pageHeight - y - height, width, height));
         }
-        return combinedBoundingBox;
+        return regions;
     }
 
+    private float maxPosition(JSONArray positions) {
+        float max = 0;
+        for (int i = 0; i < positions.length(); i++) {
+            max = Math.max(max, positions.getFloat(i));
+        }
+        return max;
+    }
 
     /**
-     * Resolves font from Base64 or defaults to Helvetica if unavailable.
+     * Resolves the font of a text element: a bundled font by family and style, a registered font by
+     * content hash, the embedded Base64 font, or the default bundled family if none is available.
      */
-    private PdfFont resolveFont(String base64Font) throws IOException, java.io.IOException {
-        if (base64Font.isEmpty()) {
-            return PdfFontFactory.createFont(StandardFonts.HELVETICA, PdfEncodings.IDENTITY_H);
+    PdfFont resolveFont(JSONObject element, DocumentFonts documentFonts) throws IOException, java.io.IOException {
+        String family = element.optString("fontFamily", "");
+        if (!family.isEmpty()) {
+            FontProgram bundled = fontRegistry.find(family, element.optString("fontStyle", ""));
+            if (bundled != null) {
+                return documentFonts.forProgram(bundled);
+            }
+            logger.warn("No bundled font {} {}, trying the embedded font", family, element.optString("fontStyle", ""));
         }
-        try {
-            byte[] fontBytes = Base64.getDecoder().decode(base64Font);
-            FontProgram fontProgram = FontProgramFactory.createFont(fontBytes);
-            PdfFont pdfFont = PdfFontFactory.createFont(fontProgram, PdfEncodings.IDENTITY_H, PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
 
-            // Retrieve the font descriptor
-            PdfDictionary fontDescriptor = pdfFont.getPdfObject().getAsDictionary(PdfName.FontDescriptor);
-            if (fontDescriptor != null) {
-                // Generate and embed the CIDSet stream
-                byte[] cidSet = generateCIDSet(fontProgram);
-                PdfStream cidSetStream = new PdfStream(cidSet);
-                fontDescriptor.put(PdfName.CIDSet, cidSetStream);
-                logger.info("Embedded CIDSet with {} bytes", cidSet.length);
+        String fontRef = element.optString("fontRef", "");
+        if (!fontRef.isEmpty()) {
+            FontProgramCache.CachedFont registered = fontStore.find(fontRef);
+            if (registered != null) {
+                return documentFonts.forProgram(registered.getProgram());
             }
+            logger.warn("Font {} is not registered, trying the embedded font", fontRef);
+        }
 
-            return pdfFont;
-
-        } catch (IOException e) {
+        String base64Font = element.optString("font", "");
+        if (base64Font.isEmpty()) {
+            return fallbackFont(element, documentFonts);
+        }
+        PdfFont embedded = documentFonts.forFontData(base64Font);
+        if (embedded != null) {
+            return embedded;
+        }
+        try {
+            byte[] fontBytes = Base64.getDecoder().decode(base64Font);
+            FontProgramCache.CachedFont cachedFont = fontProgramCache.get(fontBytes);
+            // The CIDSet is written from the glyphs used when the document closes, see CidSetPdfDocument
+            embedded = documentFonts.forProgram(cachedFont.getProgram());
+            documentFonts.putFontData(base64Font, embedded);
+            return embedded;
+        } catch (IOException | IllegalArgumentException e) {
             logger.warn("Font resolution failed, using fallback font. Error: {}", e.getMessage());
-            return PdfFontFactory.createFont(StandardFonts.HELVETICA, PdfEncodings.IDENTITY_H);
+            return fallbackFont(element, documentFonts);
         }
     }
 
-    // Generate the CIDSet byte array
-    private byte[] generateCIDSet(FontProgram fontProgram) {
-        Set<Integer> glyphsUsed = new HashSet<>();
-
-        // Iterate through possible CIDs (0-65535 for CID fonts)
-        for (int cid = 0; cid < 65536; cid++) {
-            if (fontProgram.getGlyph(cid) != null) {
-                glyphsUsed.add(cid);
-            }
+    // The default bundled family, embedded like any other font; Helvetica only if that family is not bundled
+    private PdfFont fallbackFont(JSONObject element, DocumentFonts documentFonts) throws java.io.IOException {
+        FontProgram fallback = fontRegistry.getDefault();
+        if (fallback != null) {
+            logger.info("Using default font {} for element {}", fontRegistry.getDefaultFamily(), element.optString("id"));
+            return documentFonts.forProgram(fallback);
         }
-
-        // Calculate size of CIDSet
-        int totalGlyphs = glyphsUsed.size();
-        byte[] cidSet = new byte[(totalGlyphs + 7) / 8];
-
-        // Mark used glyphs
-        for (int cid : glyphsUsed) {
-            cidSet[cid / 8] |= (1 << (7 - (cid % 8)));
-        }
-
-        logger.info("Generated CIDSet with {} glyphs marked.", totalGlyphs);
-        return cidSet;
+        logger.warn("Using Helvetica for element {}", element.optString("id"));
+        return documentFonts.standard(StandardFonts.HELVETICA);
     }
 
     // Method to add named destinations
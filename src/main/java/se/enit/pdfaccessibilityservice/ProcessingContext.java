@@ -0,0 +1,91 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+import com.itextpdf.layout.Document;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Everything a single request works on: its documents, the text index of its pages, and the fonts,
+ * images and tables already written to the output. A context is created per request and never shared,
+ * so {@link PdfService} and {@link TableProcessor} hold no per-request state and requests can run
+ * concurrently in one JVM. Like the documents it holds, a context is used by one thread at a time.
+ */
+public class ProcessingContext {
+
+    private final PdfInputSource input;
+    private final PdfDocument inputDocument;
+    private final CidSetPdfDocument outputDocument;
+    private final Document document;
+    private final PageTextIndexes pageTextIndexes;
+    private final ImageTranscoder.Session imageTranscodes;
+    private final PdfMetrics.Recording metrics;
+
+    private final DocumentFonts fonts = new DocumentFonts();
+    // Output image per content key, so a repeated logo is written once and referenced from every page
+    private final Map<String, PdfImageXObject> writtenImages = new HashMap<>();
+    private final Set<String> processedTableIds = new HashSet<>();
+
+    public ProcessingContext(PdfInputSource input, PdfDocument inputDocument, CidSetPdfDocument outputDocument,
+                             Document document, PageTextIndexes pageTextIndexes,
+                             ImageTranscoder.Session imageTranscodes, PdfMetrics.Recording metrics) {
+        this.input = input;
+        this.inputDocument = inputDocument;
+        this.outputDocument = outputDocument;
+        this.document = document;
+        this.pageTextIndexes = pageTextIndexes;
+        this.imageTranscodes = imageTranscodes;
+        this.metrics = metrics;
+    }
+
+    public PdfInputSource getInput() {
+        return input;
+    }
+
+    public PdfDocument getInputDocument() {
+        return inputDocument;
+    }
+
+    public CidSetPdfDocument getOutputDocument() {
+        return outputDocument;
+    }
+
+    public Document getDocument() {
+        return document;
+    }
+
+    public PageTextIndexes getPageTextIndexes() {
+        return pageTextIndexes;
+    }
+
+    public ImageTranscoder.Session getImageTranscodes() {
+        return imageTranscodes;
+    }
+
+    public PdfMetrics.Recording getMetrics() {
+        return metrics;
+    }
+
+    public DocumentFonts getFonts() {
+        return fonts;
+    }
+
+    public PdfImageXObject getWrittenImage(String contentKey) {
+        return writtenImages.get(contentKey);
+    }
+
+    public void putWrittenImage(String contentKey, PdfImageXObject image) {
+        writtenImages.put(contentKey, image);
+    }
+
+    /**
+     * Marks the table as processed, returning false if it already was in this request.
+     */
+    public boolean markTableProcessed(String tableId) {
+        return processedTableIds.add(tableId);
+    }
+}
@@ -4,7 +4,6 @@ import com.itextpdf.kernel.colors.ColorConstants;
 import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.*;
 import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
-import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
 import com.itextpdf.kernel.pdf.navigation.PdfDestination;
 import com.itextpdf.kernel.pdf.navigation.PdfExplicitDestination;
 import com.itextpdf.kernel.pdf.tagging.PdfStructElem;
@@ -19,29 +18,33 @@ import java.util.*;
 
 /**
  * Processes tables directly without using iText's Table structures to ensure exact positioning.
+ * Holds no per-request state, everything a request works on is in its {@link ProcessingContext}.
  */
 public class TableProcessor {
     private static final Logger logger = LoggerFactory.getLogger(TableProcessor.class);
     private final float cmToPoints = 28.3465f; // Conversion from cm to points
-    private final Set<String> processedTableIds = new HashSet<>();
+
     /**
      * Processes and adds a table to the PDF document by recreating it exactly like the original.
      */
     public void processTable(
-            PdfDocument inputPdfDocument,
-            PdfDocument outputPdfDocument,
+            ProcessingContext context,
             se.enit.pdfaccessibilityservice.TaggingInfo tableInfo,
             PdfStructElem parentStructElem,
-            Document document,
             Map<String, PdfOutline> bookmarks) throws IOException {
 
         logger.info("Processing table with exact matching: {}", tableInfo.getName());
 
-        if (processedTableIds.contains(tableInfo.getId())) {
+        // Tables already processed are tracked per request, ids from other requests do not count
+        if (!context.markTableProcessed(tableInfo.getId())) {
             logger.warn("Table with ID {} has already been processed, skipping", tableInfo.getId());
             return;
         }
-        processedTableIds.add(tableInfo.getId());
+
+        PdfDocument inputPdfDocument = context.getInputDocument();
+        PdfDocument outputPdfDocument = context.getOutputDocument();
+        Document document = context.getDocument();
+        PageTextIndex pageTextIndex = context.getPageTextIndexes().forPage(tableInfo.getPage());
 
         int pageNumber = tableInfo.getPage();
         PdfPage inputPage = inputPdfDocument.getPage(pageNumber);
@@ -80,9 +83,10 @@ public class TableProcessor {
 
         // Extract all cell text with exact position and formatting
         List<se.enit.pdfaccessibilityservice.TableCellData> cellsData = extractTableCells(
-                inputPdfDocument,
+                pageTextIndex,
                 tableInfo,
                 pageHeight);
+        context.getMetrics().addCells(cellsData.size());
 
         // Get row and column positions
         List<Float> rowPositions = tableInfo.getRowPositions();
@@ -159,7 +163,7 @@ public class TableProcessor {
                 // Add the cell content at the exact position
                 document.add(cellParagraph);
 
-                logger.info("Added cell [{}][{}] at exact position ({}, {})",
+                logger.debug("Added cell [{}][{}] at exact position ({}, {})",
                         rowIdx, cellData.getCol(), cellX, cellY);
             }
         }
@@ -169,15 +173,15 @@ public class TableProcessor {
 
     /**
      * Extracts cell data with exact positioning from the original PDF.
+     * The page is walked once through its text index and every chunk is routed to the cells it
+     * overlaps by binary-searching the row and column boundaries, instead of parsing the page per cell.
      */
-    private List<se.enit.pdfaccessibilityservice.TableCellData> extractTableCells(
-            PdfDocument inputPdfDocument,
+    List<se.enit.pdfaccessibilityservice.TableCellData> extractTableCells(
+            PageTextIndex pageTextIndex,
             se.enit.pdfaccessibilityservice.TaggingInfo tableInfo,
             float pageHeight) throws IOException {
 
         List<se.enit.pdfaccessibilityservice.TableCellData> cellsData = new ArrayList<>();
-        int pageNumber = tableInfo.getPage();
-        PdfPage page = inputPdfDocument.getPage(pageNumber);
 
         List<Float> rowPositions = tableInfo.getRowPositions();
         List<Float> colPositions = tableInfo.getColPositions();
@@ -197,26 +201,68 @@ public class TableProcessor {
         float baseX = (float) tableInfo.getX() * cmToPoints;
         float baseY = (float) tableInfo.getY() * cmToPoints;
 
-        // Process each cell with exact coordinates
-        for (int rowIdx = 0; rowIdx < rowPositions.size() - 1; rowIdx++) {
-            for (int colIdx = 0; colIdx < colPositions.size() - 1; colIdx++) {
-                // Calculate cell coordinates EXACTLY matching original
-                float cellX = baseX + colPositions.get(colIdx) * cmToPoints;
-                float cellY = baseY + rowPositions.get(rowIdx) * cmToPoints;
+        int rowCount = rowPositions.size() - 1;
+        int colCount = colPositions.size() - 1;
+
+        // Cell boundaries in points, measured from the page left edge and top edge respectively
+        float[] colEdges = new float[colCount + 1];
+        for (int colIdx = 0; colIdx <= colCount; colIdx++) {
+            colEdges[colIdx] = baseX + colPositions.get(colIdx) * cmToPoints;
+        }
+        float[] rowEdges = new float[rowCount + 1];
+        for (int rowIdx = 0; rowIdx <= rowCount; rowIdx++) {
+            rowEdges[rowIdx] = baseY + rowPositions.get(rowIdx) * cmToPoints;
+        }
+
+        // One listener per cell, each filtering on the cell's EXACT original extraction rectangle
+        Rectangle[] regions = new Rectangle[rowCount * colCount];
+        CustomTextRenderListener[] listeners = new CustomTextRenderListener[rowCount * colCount];
+        for (int rowIdx = 0; rowIdx < rowCount; rowIdx++) {
+            for (int colIdx = 0; colIdx < colCount; colIdx++) {
+                float cellX = colEdges[colIdx];
+                float cellY = rowEdges[rowIdx];
                 float cellWidth = (colPositions.get(colIdx + 1) - colPositions.get(colIdx)) * cmToPoints;
                 float cellHeight = (rowPositions.get(rowIdx + 1) - rowPositions.get(rowIdx)) * cmToPoints;
 
-                // Create extraction rectangle
                 Rectangle extractionRegion = new Rectangle(
                         cellX,
                         pageHeight - cellY - cellHeight,
                         cellWidth,
                         cellHeight);
+                regions[rowIdx * colCount + colIdx] = extractionRegion;
+                listeners[rowIdx * colCount + colIdx] = new CustomTextRenderListener(extractionRegion);
+            }
+        }
 
-                // Extract text with complete formatting details
-                CustomTextRenderListener listener = new CustomTextRenderListener(extractionRegion);
-                PdfCanvasProcessor processor = new PdfCanvasProcessor(listener);
-                processor.processPageContent(page);
+        if (isAscending(colEdges) && isAscending(rowEdges)) {
+            TextChunkBuffer chunks = pageTextIndex.getChunks();
+            for (int chunk = 0; chunk < chunks.size(); chunk++) {
+                float chunkX = chunks.getX(chunk);
+                float top = pageHeight - chunks.getY(chunk) - chunks.getHeight(chunk);
+                float bottom = pageHeight - chunks.getY(chunk);
+
+                // Widen the searched range by one cell on each side; the listener does the exact test
+                int firstRow = Math.max(0, upperBound(rowEdges, top) - 2);
+                int lastRow = Math.min(rowCount - 1, upperBound(rowEdges, bottom));
+                int firstCol = Math.max(0, upperBound(colEdges, chunkX) - 2);
+                int lastCol = Math.min(colCount - 1, upperBound(colEdges, chunkX + chunks.getWidth(chunk)));
+
+                for (int rowIdx = firstRow; rowIdx <= lastRow; rowIdx++) {
+                    for (int colIdx = firstCol; colIdx <= lastCol; colIdx++) {
+                        listeners[rowIdx * colCount + colIdx].addTextChunk(chunks, chunk);
+                    }
+                }
+            }
+        } else {
+            logger.warn("Table {} has unordered row or column positions, querying cells individually", tableInfo.getId());
+            for (int cell = 0; cell < listeners.length; cell++) {
+                pageTextIndex.replay(regions[cell], listeners[cell]);
+            }
+        }
+
+        for (int rowIdx = 0; rowIdx < rowCount; rowIdx++) {
+            for (int colIdx = 0; colIdx < colCount; colIdx++) {
+                CustomTextRenderListener listener = listeners[rowIdx * colCount + colIdx];
 
                 // Process text to preserve all spacing and formatting
                 listener.preprocessYCoordinates();
@@ -233,18 +279,42 @@ public class TableProcessor {
 
                 // Create cell data with exact positioning and formatting
                 se.enit.pdfaccessibilityservice.TableCellData cellData = new se.enit.pdfaccessibilityservice.TableCellData(
-                        rowIdx, colIdx, extractionRegion, cellText, isHeader,
+                        rowIdx, colIdx, regions[rowIdx * colCount + colIdx], cellText, isHeader,
                         fontName, fontSize, listener.getExtractedFontColor());
                 cellsData.add(cellData);
 
-                logger.info("Extracted table cell [{}][{}] at EXACT position ({}, {}): Text='{}', Font='{}', Size={}",
-                        rowIdx, colIdx, cellX, cellY, cellText, fontName, fontSize);
+                logger.debug("Extracted table cell [{}][{}] at EXACT position ({}, {}): Text='{}', Font='{}', Size={}",
+                        rowIdx, colIdx, colEdges[colIdx], rowEdges[rowIdx], cellText, fontName, fontSize);
             }
         }
 
         return cellsData;
     }
 
+    // Index of the first edge strictly greater than value
+    private int upperBound(float[] edges, float value) {
+        int low = 0;
+        int high = edges.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (edges[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private boolean isAscending(float[] edges) {
+        for (int i = 1; i < edges.length; i++) {
+            if (edges[i] < edges[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Clears the table area.
      */
@@ -0,0 +1,127 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.colors.Color;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.geom.LineSegment;
+import com.itextpdf.kernel.geom.Vector;
+import com.itextpdf.kernel.pdf.canvas.parser.data.TextRenderInfo;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Growable column store of text chunks. Geometry and font size live in primitive float arrays,
+ * text, font name and colour are kept by reference, and font names are resolved once per PdfFont.
+ */
+public class TextChunkBuffer {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private float[] x = new float[INITIAL_CAPACITY];
+    private float[] y = new float[INITIAL_CAPACITY];
+    private float[] width = new float[INITIAL_CAPACITY];
+    private float[] height = new float[INITIAL_CAPACITY];
+    private float[] fontSize = new float[INITIAL_CAPACITY];
+    private String[] text = new String[INITIAL_CAPACITY];
+    private String[] fontName = new String[INITIAL_CAPACITY];
+    private Color[] fontColor = new Color[INITIAL_CAPACITY];
+    private int size;
+
+    private final Map<PdfFont, String> fontNames = new IdentityHashMap<>();
+
+    /**
+     * Writes the bounding box of the chunk's descent line into {@code box} as x, y, width, height,
+     * computed exactly as {@code LineSegment.getBoundingRectangle()} does but without allocating a Rectangle.
+     */
+    public static void descentBox(TextRenderInfo renderInfo, float[] box) {
+        LineSegment descentLine = renderInfo.getDescentLine();
+        Vector start = descentLine.getStartPoint();
+        Vector end = descentLine.getEndPoint();
+        float x1 = start.get(0);
+        float y1 = start.get(1);
+        float x2 = end.get(0);
+        float y2 = end.get(1);
+        box[0] = Math.min(x1, x2);
+        box[1] = Math.min(y1, y2);
+        box[2] = Math.abs(x2 - x1);
+        box[3] = Math.abs(y2 - y1);
+    }
+
+    public void add(TextRenderInfo renderInfo, float[] box) {
+        add(renderInfo.getText(), box[0], box[1], box[2], box[3],
+                fontName(renderInfo.getFont()), renderInfo.getFontSize(), renderInfo.getFillColor());
+    }
+
+    public void add(TextChunkBuffer source, int index) {
+        add(source.text[index], source.x[index], source.y[index], source.width[index], source.height[index],
+                source.fontName[index], source.fontSize[index], source.fontColor[index]);
+    }
+
+    private void add(String chunkText, float chunkX, float chunkY, float chunkWidth, float chunkHeight,
+                     String chunkFontName, float chunkFontSize, Color chunkFontColor) {
+        if (size == x.length) {
+            grow();
+        }
+        text[size] = chunkText;
+        x[size] = chunkX;
+        y[size] = chunkY;
+        width[size] = chunkWidth;
+        height[size] = chunkHeight;
+        fontName[size] = chunkFontName;
+        fontSize[size] = chunkFontSize;
+        fontColor[size] = chunkFontColor;
+        size++;
+    }
+
+    public String fontName(PdfFont font) {
+        return fontNames.computeIfAbsent(font, f -> f.getFontProgram().getFontNames().getFontName());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getText(int index) {
+        return text[index];
+    }
+
+    public float getX(int index) {
+        return x[index];
+    }
+
+    public float getY(int index) {
+        return y[index];
+    }
+
+    public float getWidth(int index) {
+        return width[index];
+    }
+
+    public float getHeight(int index) {
+        return height[index];
+    }
+
+    public String getFontName(int index) {
+        return fontName[index];
+    }
+
+    public float getFontSize(int index) {
+        return fontSize[index];
+    }
+
+    public Color getFontColor(int index) {
+        return fontColor[index];
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        fontSize = Arrays.copyOf(fontSize, capacity);
+        text = Arrays.copyOf(text, capacity);
+        fontName = Arrays.copyOf(fontName, capacity);
+        fontColor = Arrays.copyOf(fontColor, capacity);
+    }
+}
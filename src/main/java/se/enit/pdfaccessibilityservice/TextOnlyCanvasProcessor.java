@@ -0,0 +1,109 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Matrix;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.geom.Vector;
+import com.itextpdf.kernel.pdf.PdfArray;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.canvas.parser.IContentOperator;
+import com.itextpdf.kernel.pdf.canvas.parser.IXObjectDoHandler;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Canvas processor for text extraction only. Path construction, path painting, clipping and
+ * images are ignored, and form XObjects whose transformed BBox cannot intersect any of the
+ * requested regions are not descended into.
+ */
+public class TextOnlyCanvasProcessor extends PdfCanvasProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(TextOnlyCanvasProcessor.class);
+
+    private static final String[] IGNORED_OPERATORS = {
+            "m", "l", "c", "v", "y", "h", "re",
+            "S", "s", "f", "F", "f*", "B", "B*", "b", "b*", "n",
+            "W", "W*", "EI"
+    };
+
+    private static final IContentOperator IGNORE = (processor, operator, operands) -> {
+    };
+
+    private final List<Rectangle> regions;
+    private int prunedForms;
+
+    /**
+     * @param regions regions the caller will query, in default user space; empty to keep every form XObject
+     */
+    public TextOnlyCanvasProcessor(IEventListener listener, List<Rectangle> regions) {
+        super(listener);
+        this.regions = regions != null ? regions : Collections.emptyList();
+
+        for (String operator : IGNORED_OPERATORS) {
+            registerContentOperator(operator, IGNORE);
+        }
+        registerXObjectDoHandler(PdfName.Image, (processor, canvasTagHierarchy, stream, name) -> {
+        });
+
+        IXObjectDoHandler formHandler = registerXObjectDoHandler(PdfName.Form, null);
+        registerXObjectDoHandler(PdfName.Form, (processor, canvasTagHierarchy, stream, name) -> {
+            if (intersectsRegions(stream)) {
+                formHandler.handleXObject(processor, canvasTagHierarchy, stream, name);
+            } else {
+                prunedForms++;
+            }
+        });
+    }
+
+    public int getPrunedForms() {
+        return prunedForms;
+    }
+
+    private boolean intersectsRegions(PdfStream formStream) {
+        if (regions.isEmpty()) {
+            return true;
+        }
+        PdfArray bboxArray = formStream.getAsArray(PdfName.BBox);
+        if (bboxArray == null || bboxArray.size() != 4) {
+            return true;
+        }
+
+        Matrix transform = getGraphicsState().getCtm();
+        PdfArray matrixArray = formStream.getAsArray(PdfName.Matrix);
+        if (matrixArray != null && matrixArray.size() == 6) {
+            float[] m = matrixArray.toFloatArray();
+            transform = new Matrix(m[0], m[1], m[2], m[3], m[4], m[5]).multiply(transform);
+        }
+
+        // Transform all four corners, the form may be rotated or skewed
+        Rectangle bbox = bboxArray.toRectangle();
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        float[][] corners = {
+                {bbox.getLeft(), bbox.getBottom()}, {bbox.getRight(), bbox.getBottom()},
+                {bbox.getLeft(), bbox.getTop()}, {bbox.getRight(), bbox.getTop()}
+        };
+        for (float[] corner : corners) {
+            Vector point = new Vector(corner[0], corner[1], 1).cross(transform);
+            minX = Math.min(minX, point.get(0));
+            minY = Math.min(minY, point.get(1));
+            maxX = Math.max(maxX, point.get(0));
+            maxY = Math.max(maxY, point.get(1));
+        }
+
+        for (Rectangle region : regions) {
+            if (region.getLeft() <= maxX && region.getRight() >= minX
+                    && region.getBottom() <= maxY && region.getTop() >= minY) {
+                return true;
+            }
+        }
+        logger.debug("Skipping form XObject outside all requested regions");
+        return false;
+    }
+}
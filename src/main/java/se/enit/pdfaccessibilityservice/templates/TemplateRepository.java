@@ -1,8 +1,14 @@
 package se.enit.pdfaccessibilityservice.templates;
 
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import java.util.List;
 
 public interface TemplateRepository extends MongoRepository<Template, String> {
     List<Template> findByTemplateName(String templateName); // Correctly match the field name
+
+    // Distinct template names in name order, at most limit of them
+    @Aggregation({"{ $match: { templateName: { $type: 'string', $ne: '' } } }",
+            "{ $group: { _id: '$templateName' } }", "{ $sort: { _id: 1 } }", "{ $limit: ?0 }"})
+    List<String> findTemplateNames(int limit);
 }
@@ -0,0 +1,99 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.io.font.otf.GlyphLine;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CidSetPdfDocumentTest {
+
+    private static final String TEXT = "Räksmörgås ÅÄÖ åäö é";
+
+    @Test
+    void cidSetCoversCompositeComponentsInTheSubset() throws IOException {
+        FontProgram arial;
+        try (InputStream in = getClass().getResourceAsStream("/fonts/arial.ttf")) {
+            arial = FontProgramFactory.createFont(in.readAllBytes());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BitSet shown = new BitSet();
+        try (CidSetPdfDocument pdfDocument = new CidSetPdfDocument(new PdfWriter(out))) {
+            PdfFont font = PdfFontFactory.createFont(arial, PdfEncodings.IDENTITY_H,
+                    PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
+            new PdfCanvas(pdfDocument.addNewPage(PageSize.A4))
+                    .beginText()
+                    .setFontAndSize(font, 12)
+                    .moveText(72, 720)
+                    .showText(TEXT)
+                    .endText();
+            pdfDocument.recordGlyphs(font, TEXT);
+
+            GlyphLine line = font.createGlyphLine(TEXT);
+            for (int i = line.start; i < line.end; i++) {
+                shown.set(line.get(i).getCode());
+            }
+        }
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(out.toByteArray())))) {
+            PdfDictionary fonts = pdfDocument.getFirstPage().getResources().getResource(PdfName.Font);
+            PdfDictionary type0 = fonts.getAsDictionary(fonts.keySet().iterator().next());
+            PdfDictionary descriptor = type0.getAsArray(PdfName.DescendantFonts).getAsDictionary(0)
+                    .getAsDictionary(PdfName.FontDescriptor);
+            BitSet cidSet = BitSet.valueOf(reverseBits(descriptor.getAsStream(PdfName.CIDSet).getBytes()));
+            BitSet inSubset = CidSetPdfDocument.glyphsWithOutlines(descriptor.getAsStream(PdfName.FontFile2).getBytes());
+
+            // Components of the accented letters, which are never shown themselves
+            for (int component : new int[]{36, 50, 68, 72, 82, 141, 142, 219}) {
+                assertTrue(inSubset.get(component), "glyph " + component + " not in the subset");
+                assertTrue(cidSet.get(component), "glyph " + component + " not in the CIDSet");
+            }
+
+            BitSet expected = (BitSet) inSubset.clone();
+            expected.or(shown);
+            expected.set(0);
+            assertEquals(expected, cidSet);
+        }
+    }
+
+    @Test
+    void cidSetBitsAreMostSignificantFirst() {
+        BitSet glyphs = new BitSet();
+        glyphs.set(0);
+        glyphs.set(9);
+
+        byte[] cidSet = CidSetPdfDocument.toCidSet(glyphs);
+
+        assertEquals(2, cidSet.length);
+        assertEquals((byte) 0x80, cidSet[0]);
+        assertEquals((byte) 0x40, cidSet[1]);
+    }
+
+    // BitSet.valueOf reads each byte least significant bit first
+    private static byte[] reverseBits(byte[] bytes) {
+        byte[] reversed = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            reversed[i] = (byte) (Integer.reverse(bytes[i] & 0xFF) >>> 24);
+        }
+        return reversed;
+    }
+}
@@ -0,0 +1,41 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.font.FontProgram;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FontProgramCacheTest {
+
+    @Test
+    void evictedFontIsParsedAgain() throws IOException {
+        byte[] arial = font("arial.ttf");
+        byte[] arialNarrow = font("ARIALN.TTF");
+        FontProgramCache cache = new FontProgramCache(arial.length);
+
+        FontProgram first = cache.get(arial).getProgram();
+        assertSame(first, cache.get(arial).getProgram());
+
+        cache.get(arialNarrow);
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.getIfPresent(FontProgramCache.digest(arial)));
+
+        // Served from iText's own font cache, this would be the same program again
+        FontProgram reparsed = cache.get(arial).getProgram();
+        assertNotSame(first, reparsed);
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    private byte[] font(String name) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/fonts/" + name)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfStream;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ImageExtractorTest {
+
+    @Test
+    void sameImageInTwoObjectsHasOneContentKey() throws IOException {
+        byte[] pdf = PageImageIndexTest.pdfWithImages(new Rectangle(100, 400, 200, 150), new Rectangle(100, 100, 200, 150));
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            PageImageIndex index = PageImageIndex.build(pdfDocument.getFirstPage());
+            assertNotEquals(index.getObjectNumber(0), index.getObjectNumber(1));
+
+            assertEquals(contentKey(pdfDocument, index, 0), contentKey(pdfDocument, index, 1));
+        }
+    }
+
+    @Test
+    void contentKeyDoesNotDependOnTheDocument() throws IOException {
+        byte[] first = PageImageIndexTest.pdfWithImages(new Rectangle(100, 400, 200, 150));
+        byte[] second = PageImageIndexTest.pdfWithImages(new Rectangle(300, 100, 100, 75), new Rectangle(100, 400, 200, 150));
+
+        try (PdfDocument firstDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(first)));
+             PdfDocument secondDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(second)))) {
+            PageImageIndex firstIndex = PageImageIndex.build(firstDocument.getFirstPage());
+            PageImageIndex secondIndex = PageImageIndex.build(secondDocument.getFirstPage());
+
+            assertEquals(contentKey(firstDocument, firstIndex, 0), contentKey(secondDocument, secondIndex, 1));
+        }
+    }
+
+    @Test
+    void distinctImagesHaveDistinctContentKeys() throws IOException {
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 0, 0, 1, 1, 3);
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(synthetic.getPdf())))) {
+            PageImageIndex index = PageImageIndex.build(pdfDocument.getFirstPage());
+
+            assertNotEquals(contentKey(pdfDocument, index, 0), contentKey(pdfDocument, index, 1));
+            assertNotEquals(contentKey(pdfDocument, index, 1), contentKey(pdfDocument, index, 2));
+            assertNotEquals(contentKey(pdfDocument, index, 0), contentKey(pdfDocument, index, 2));
+        }
+    }
+
+    @Test
+    void tagsOverIdenticalImagesShareTheContentKey() throws IOException {
+        byte[] pdf = PageImageIndexTest.pdfWithImages(new Rectangle(100, 400, 200, 150), new Rectangle(100, 100, 200, 150));
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            PdfPage page = pdfDocument.getFirstPage();
+            JSONArray tags = new JSONArray()
+                    .put(new JSONObject().put("id", "top").put("x", 3.53).put("y", 7.05).put("width", 7.06).put("height", 5.29))
+                    .put(new JSONObject().put("id", "bottom").put("x", 3.53).put("y", 17.63).put("width", 7.06).put("height", 5.29));
+
+            Map<Integer, ImageDataWithPosition> matches = new ImageExtractor().matchPageImages(
+                    page, 1, List.of(0, 1), tags, (stream, rectangle) -> null);
+
+            assertEquals(2, matches.size());
+            assertNotEquals(matches.get(0).getObjectNumber(), matches.get(1).getObjectNumber());
+            assertEquals(matches.get(0).getContentKey(), matches.get(1).getContentKey());
+        }
+    }
+
+    private static String contentKey(PdfDocument pdfDocument, PageImageIndex index, int placement) {
+        return ImageExtractor.contentKey((PdfStream) pdfDocument.getPdfObject(index.getObjectNumber(placement)));
+    }
+}
@@ -0,0 +1,257 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import com.itextpdf.kernel.pdf.xobject.PdfImageXObject;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Transcodes synthetic images drawn on a page and decodes the results again with PDFBox.
+ */
+class ImageTranscoderTest {
+
+    private static final int SIZE = 64;
+    // Drawn at half the pixel size in points, so 72 DPI halves each axis
+    private static final Rectangle PLACED = new Rectangle(100, 400, SIZE / 2f, SIZE / 2f);
+    private static final ImageOptimizationProfile JPEG_AT_72_DPI =
+            new ImageOptimizationProfile(72, ImageOptimizationProfile.Encoder.JPEG, 0.9f);
+
+    private ThreadPoolExecutor imageExecutor;
+    private Path workDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        imageExecutor = new ExecutorConfig().pdfImageExecutor(1);
+        workDir = Files.createTempDirectory("image-transcoder-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        imageExecutor.shutdownNow();
+        try (var files = Files.walk(workDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void bilevelImageIsEncodedAsCcittG4() throws IOException {
+        // DeviceGray at 1 bit per pixel, 1 is white: the left half is black
+        byte[] packed = new byte[SIZE / 8 * SIZE];
+        for (int row = 0; row < SIZE; row++) {
+            Arrays.fill(packed, row * SIZE / 8 + SIZE / 16, (row + 1) * SIZE / 8, (byte) 0xFF);
+        }
+
+        PDImageXObject result = transcode(ImageDataFactory.create(SIZE, SIZE, 1, 1, packed, null), JPEG_AT_72_DPI,
+                ImageTranscoder.Target.Encoding.CCITT_G4);
+
+        assertEquals(List.of(COSName.CCITTFAX_DECODE), result.getStream().getFilters());
+        assertEquals(SIZE / 2, result.getWidth());
+        assertEquals(SIZE / 2, result.getHeight());
+        BufferedImage decoded = result.getImage();
+        assertEquals(Color.BLACK.getRGB(), decoded.getRGB(4, 16));
+        assertEquals(Color.WHITE.getRGB(), decoded.getRGB(SIZE / 2 - 4, 16));
+    }
+
+    @Test
+    void transparentImageFallsBackFromJpegToFlateWithASoftMask() throws IOException {
+        // Red and black on the left half, transparent on the right
+        BufferedImage argb = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        fill(argb, new Color(255, 0, 0), 0, SIZE / 4);
+        fill(argb, Color.BLACK, SIZE / 4, SIZE / 4);
+
+        PDImageXObject result = transcode(ImageDataFactory.create(argb, null), JPEG_AT_72_DPI,
+                ImageTranscoder.Target.Encoding.JPEG);
+
+        assertEquals(List.of(COSName.FLATE_DECODE), result.getStream().getFilters());
+        assertNotNull(result.getSoftMask());
+        assertEquals(SIZE / 2, result.getWidth());
+        assertEquals(SIZE / 2, result.getHeight());
+        BufferedImage decoded = result.getImage();
+        assertEquals(0xFFFF0000, decoded.getRGB(2, 16));
+        // The transparent pixels are black too, so the mask must not be a colour key
+        assertEquals(0xFF000000, decoded.getRGB(SIZE / 4 - 2, 16));
+        assertEquals(0, decoded.getRGB(SIZE / 2 - 2, 16) >>> 24);
+    }
+
+    @Test
+    void opaqueImageIsEncodedAsJpeg() throws IOException {
+        BufferedImage rgb = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        fill(rgb, new Color(0, 0, 255), 0, SIZE);
+
+        PDImageXObject result = transcode(ImageDataFactory.create(rgb, null), JPEG_AT_72_DPI,
+                ImageTranscoder.Target.Encoding.JPEG);
+
+        assertEquals(List.of(COSName.DCT_DECODE), result.getStream().getFilters());
+        assertNull(result.getSoftMask());
+        assertEquals(SIZE / 2, result.getWidth());
+        assertEquals(SIZE / 2, result.getHeight());
+        Color pixel = new Color(result.getImage().getRGB(16, 16));
+        assertTrue(pixel.getBlue() > 240 && pixel.getRed() < 16 && pixel.getGreen() < 16, pixel.toString());
+    }
+
+    @Test
+    void planDownsamplesToTheTargetDpiAlongTheSharperAxis() throws IOException {
+        ImageTranscoder imageTranscoder = new ImageTranscoder(imageExecutor, 4, new String[0]);
+        BufferedImage rgb = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        byte[] pdf = pdfWithImages(ImageDataFactory.create(rgb, null), PLACED);
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            PdfStream stream = imageStream(pdfDocument);
+            ImageOptimizationProfile auto = ImageOptimizationProfile.fromJson(new JSONObject().put("targetDpi", 72));
+
+            ImageTranscoder.Target half = imageTranscoder.plan(stream, PLACED, auto);
+            assertEquals(SIZE / 2, half.getWidth());
+            assertEquals(SIZE / 2, half.getHeight());
+            assertEquals(ImageTranscoder.Target.Encoding.FLATE, half.getEncoding());
+
+            // Stretched to twice the width, the horizontal axis needs three quarters of the pixels
+            ImageTranscoder.Target stretched = imageTranscoder.plan(stream, new Rectangle(0, 0, 48, 16), auto);
+            assertEquals(48, stretched.getWidth());
+            assertEquals(48, stretched.getHeight());
+
+            // Saving less than a tenth of the pixels per axis is not worth re-encoding
+            assertNull(imageTranscoder.plan(stream, new Rectangle(0, 0, 60, 60), auto));
+            assertNull(imageTranscoder.plan(stream, PLACED, ImageOptimizationProfile.NONE));
+        }
+    }
+
+    @Test
+    void sessionReadsAheadAtMostMaxDecodedAndCancelsOnClose() throws Exception {
+        ImageTranscoder imageTranscoder = new ImageTranscoder(imageExecutor, 2, new String[0]);
+        BufferedImage rgb = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        Path input = Files.write(workDir.resolve("input.pdf"),
+                pdfWithImages(ImageDataFactory.create(rgb, null), PLACED, PLACED, PLACED, PLACED, PLACED));
+
+        // Keep the only worker busy, so the read-ahead stays in the queue
+        CountDownLatch blocked = new CountDownLatch(1);
+        imageExecutor.execute(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try (PdfInputSource source = PdfInputSource.open(input)) {
+            List<ImageDataWithPosition> images = images(source, imageTranscoder, JPEG_AT_72_DPI);
+            assertEquals(5, images.size());
+
+            ImageTranscoder.Session session = imageTranscoder.openSession(source, images);
+            assertEquals(2, imageExecutor.getQueue().size());
+
+            blocked.countDown();
+            assertNotNull(session.take(images.get(0)));
+            // Taking one image submits the next one
+            assertEquals(1 + 3, imageExecutor.getTaskCount());
+
+            session.close();
+            assertEquals(1 + 3, imageExecutor.getTaskCount());
+            for (Runnable queued : imageExecutor.getQueue()) {
+                assertTrue(((Future<?>) queued).isCancelled());
+            }
+        }
+    }
+
+    private PDImageXObject transcode(ImageData image, ImageOptimizationProfile profile,
+                                     ImageTranscoder.Target.Encoding expectedEncoding) throws IOException {
+        ImageTranscoder imageTranscoder = new ImageTranscoder(imageExecutor, 4, new String[0]);
+        Path input = Files.write(workDir.resolve("input.pdf"), pdfWithImages(image, PLACED));
+
+        PdfImageXObject transcoded;
+        try (PdfInputSource source = PdfInputSource.open(input)) {
+            List<ImageDataWithPosition> images = images(source, imageTranscoder, profile);
+            assertEquals(expectedEncoding, images.get(0).getTranscodeTarget().getEncoding());
+            try (ImageTranscoder.Session session = imageTranscoder.openSession(source, images)) {
+                transcoded = session.take(images.get(0));
+            }
+        }
+        assertNotNull(transcoded);
+
+        // Place the result in a document of its own and decode it from there
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(out))) {
+            new PdfCanvas(pdfDocument.addNewPage(PageSize.A4)).addXObjectFittedIntoRectangle(transcoded, PLACED);
+        }
+        PDDocument document = Loader.loadPDF(out.toByteArray());
+        PDResources resources = document.getPage(0).getResources();
+        return (PDImageXObject) resources.getXObject(resources.getXObjectNames().iterator().next());
+    }
+
+    private static List<ImageDataWithPosition> images(PdfInputSource source, ImageTranscoder imageTranscoder,
+                                                      ImageOptimizationProfile profile) throws IOException {
+        List<ImageDataWithPosition> images = new ArrayList<>();
+        try (PdfDocument pdfDocument = new PdfDocument(source.newReader())) {
+            PageImageIndex index = PageImageIndex.build(pdfDocument.getFirstPage());
+            for (int i = 0; i < index.size(); i++) {
+                PdfStream stream = (PdfStream) pdfDocument.getPdfObject(index.getObjectNumber(i));
+                Rectangle bounds = index.getBounds(i);
+                images.add(new ImageDataWithPosition("Im" + i, index.getObjectNumber(i), 0,
+                        imageTranscoder.plan(stream, bounds, profile), ImageExtractor.contentKey(stream), 1, bounds,
+                        "image-" + i));
+            }
+        }
+        return images;
+    }
+
+    private static PdfStream imageStream(PdfDocument pdfDocument) {
+        PageImageIndex index = PageImageIndex.build(pdfDocument.getFirstPage());
+        return (PdfStream) pdfDocument.getPdfObject(index.getObjectNumber(0));
+    }
+
+    private static byte[] pdfWithImages(ImageData image, Rectangle... placements) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(out))) {
+            PdfCanvas canvas = new PdfCanvas(pdfDocument.addNewPage(PageSize.A4));
+            for (Rectangle placement : placements) {
+                // Separate objects, as if every placement were a different picture
+                canvas.addXObjectFittedIntoRectangle(new PdfImageXObject(image), placement);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void fill(BufferedImage image, Color color, int x, int width) {
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setColor(color);
+            graphics.fillRect(x, 0, width, image.getHeight());
+        } finally {
+            graphics.dispose();
+        }
+    }
+}
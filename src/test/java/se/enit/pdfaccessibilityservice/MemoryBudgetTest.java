@@ -0,0 +1,133 @@
+package se.enit.pdfaccessibilityservice;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryBudgetTest {
+
+    private static final long MB = 1L << 20;
+
+    private final ExecutorService waiters = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        waiters.shutdownNow();
+    }
+
+    @Test
+    void requestsWithinTheBudgetAreAdmittedAtOnce() {
+        MemoryBudget budget = budget(100 * MB, 1, 10_000);
+
+        try (MemoryBudget.Reservation first = budget.reserve(60 * MB);
+             MemoryBudget.Reservation second = budget.reserve(40 * MB)) {
+            assertEquals(60 * MB, first.getBytes());
+            assertEquals(40 * MB, second.getBytes());
+            assertEquals(100 * MB, budget.getReservedBytes());
+        }
+        assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    void requestIsRejectedWhenTheQueueIsFull() throws Exception {
+        MemoryBudget budget = budget(100 * MB, 1, 10_000);
+
+        try (MemoryBudget.Reservation held = budget.reserve(100 * MB)) {
+            Future<MemoryBudget.Reservation> queued = waiters.submit(() -> budget.reserve(10 * MB));
+            awaitWaiting(budget, 1);
+
+            AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class, () -> budget.reserve(10 * MB));
+            assertTrue(e.getMessage().contains("queue full"), e.getMessage());
+            assertEquals(10, e.getRetryAfterSeconds());
+            queued.cancel(true);
+        }
+    }
+
+    @Test
+    void waitTimesOutWithRetryAfter() {
+        MemoryBudget budget = budget(100 * MB, 5, 1000);
+
+        try (MemoryBudget.Reservation held = budget.reserve(80 * MB)) {
+            long start = System.nanoTime();
+            AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class, () -> budget.reserve(30 * MB));
+
+            assertTrue(e.getMessage().contains("timed out"), e.getMessage());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1000));
+            assertEquals(1, e.getRetryAfterSeconds());
+            assertEquals(80 * MB, budget.getReservedBytes());
+        }
+    }
+
+    @Test
+    void releaseAdmitsAQueuedRequest() throws Exception {
+        MemoryBudget budget = budget(100 * MB, 5, 10_000);
+        MemoryBudget.Reservation held = budget.reserve(70 * MB);
+
+        Future<MemoryBudget.Reservation> queued = waiters.submit(() -> budget.reserve(50 * MB));
+        awaitWaiting(budget, 1);
+        assertFalse(queued.isDone());
+
+        held.close();
+        try (MemoryBudget.Reservation admitted = queued.get(5, TimeUnit.SECONDS)) {
+            assertEquals(50 * MB, admitted.getBytes());
+            assertEquals(50 * MB, budget.getReservedBytes());
+        }
+        // Closing twice returns the memory once
+        held.close();
+        assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    void reserveWaitingIgnoresTheQueueLimitAndTimeout() throws Exception {
+        MemoryBudget budget = budget(100 * MB, 0, 100);
+        MemoryBudget.Reservation held = budget.reserve(100 * MB);
+
+        assertThrows(AdmissionRejectedException.class, () -> budget.reserve(10 * MB));
+        Future<MemoryBudget.Reservation> waiting = waiters.submit(() -> budget.reserveWaiting(10 * MB));
+        awaitWaiting(budget, 1);
+        Thread.sleep(300);
+        assertFalse(waiting.isDone());
+
+        held.close();
+        try (MemoryBudget.Reservation admitted = waiting.get(5, TimeUnit.SECONDS)) {
+            assertEquals(10 * MB, admitted.getBytes());
+        }
+    }
+
+    @Test
+    void requestLargerThanTheBudgetRunsAlone() throws Exception {
+        MemoryBudget budget = budget(100 * MB, 5, 10_000);
+
+        MemoryBudget.Reservation small = budget.reserve(10 * MB);
+        Future<MemoryBudget.Reservation> large = waiters.submit(() -> budget.reserve(500 * MB));
+        awaitWaiting(budget, 1);
+
+        small.close();
+        try (MemoryBudget.Reservation admitted = large.get(5, TimeUnit.SECONDS)) {
+            // Clamped to the whole budget, so it waits for everything else instead of forever
+            assertEquals(100 * MB, admitted.getBytes());
+            assertEquals(100 * MB, budget.getReservedBytes());
+        }
+        assertEquals(0, budget.getReservedBytes());
+    }
+
+    private static MemoryBudget budget(long budgetBytes, int queueCapacity, long maxWaitMillis) {
+        return new MemoryBudget(budgetBytes, queueCapacity, maxWaitMillis, 16 * MB, 2, 256L << 10, 64L << 10);
+    }
+
+    private static void awaitWaiting(MemoryBudget budget, int waiters) throws InterruptedException {
+        for (int i = 0; i < 500 && budget.getWaiting() < waiters; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(waiters, budget.getWaiting());
+    }
+}
@@ -0,0 +1,74 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageExtractionStageTest {
+
+    private ThreadPoolExecutor extractionExecutor;
+    private ThreadPoolExecutor imageExecutor;
+    private PageExtractionStage stage;
+    private Path input;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        extractionExecutor = executorConfig.pdfExtractionExecutor(4);
+        imageExecutor = executorConfig.pdfImageExecutor(1);
+        stage = new PageExtractionStage(extractionExecutor, new ImageTranscoder(imageExecutor, 4, new String[0]));
+        input = Files.createTempFile("page-extraction-stage-test", ".pdf");
+        Files.write(input, SyntheticPdf.generate(6, 1, 0, 1, 1, 0).getPdf());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        extractionExecutor.shutdown();
+        imageExecutor.shutdown();
+        Files.delete(input);
+    }
+
+    @Test
+    void onlyPagesWithWorkAreDistributed() throws IOException {
+        Rectangle region = new Rectangle(50, 700, 300, 50);
+        JSONArray imageTags = new JSONArray()
+                .put(new JSONObject().put("id", "image").put("page", 5).put("x", 1).put("y", 1).put("width", 2).put("height", 2))
+                .put(new JSONObject().put("id", "outside").put("page", 9).put("x", 1).put("y", 1).put("width", 2).put("height", 2));
+
+        PageExtractionStage.ExtractedPages extracted;
+        try (PdfInputSource source = PdfInputSource.open(input)) {
+            extracted = stage.extract(source, 6, Map.of(2, List.of(region), 5, List.of(region)), imageTags,
+                    ImageOptimizationProfile.NONE);
+        }
+
+        assertEquals(Set.of(2, 5), extracted.getTextIndexes().keySet());
+        // One worker per page with work, not one per page of the document
+        assertEquals(2, extractionExecutor.getTaskCount());
+    }
+
+    @Test
+    void documentWithoutTagsSubmitsNothing() throws IOException {
+        PageExtractionStage.ExtractedPages extracted;
+        try (PdfInputSource source = PdfInputSource.open(input)) {
+            extracted = stage.extract(source, 6, Map.of(), new JSONArray(), ImageOptimizationProfile.NONE);
+        }
+
+        assertTrue(extracted.getTextIndexes().isEmpty());
+        assertTrue(extracted.getImages().isEmpty());
+        assertEquals(0, extractionExecutor.getTaskCount());
+    }
+}
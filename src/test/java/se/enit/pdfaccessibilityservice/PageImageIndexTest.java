@@ -0,0 +1,149 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PageImageIndexTest {
+
+    private static final float CM_TO_POINTS = 28.3465f;
+
+    @Test
+    void eachTagOverlapsItsOwnPlacement() throws IOException {
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 0, 0, 1, 1, 4);
+        JSONArray tags = new JSONObject(synthetic.getTags()).getJSONArray("taggingInformation");
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(synthetic.getPdf())))) {
+            PdfPage page = pdfDocument.getFirstPage();
+            float pageHeight = page.getPageSize().getHeight();
+            PageImageIndex index = PageImageIndex.build(page);
+
+            assertEquals(4, index.size());
+            for (int i = 0; i < tags.length(); i++) {
+                Rectangle tagRectangle = tagRectangle(tags.getJSONObject(i), pageHeight);
+                assertEquals(i, index.bestOverlap(tagRectangle, new BitSet()));
+                // Coordinates are rounded when the content stream is written
+                Rectangle bounds = index.getBounds(i);
+                assertEquals(tagRectangle.getX(), bounds.getX(), 0.01);
+                assertEquals(tagRectangle.getY(), bounds.getY(), 0.01);
+                assertEquals(tagRectangle.getWidth(), bounds.getWidth(), 0.01);
+                assertEquals(tagRectangle.getHeight(), bounds.getHeight(), 0.01);
+            }
+
+            // Matched in reverse tag order, every tag still gets the image drawn in its rectangle
+            Map<Integer, ImageDataWithPosition> matches = new ImageExtractor().matchPageImages(
+                    page, 1, List.of(3, 2, 1, 0), tags, (stream, rectangle) -> null);
+            assertEquals(4, matches.size());
+            for (int i = 0; i < tags.length(); i++) {
+                assertEquals(index.getObjectNumber(i), matches.get(i).getObjectNumber());
+                assertEquals(tags.getJSONObject(i).getString("id"), matches.get(i).getId());
+            }
+        }
+    }
+
+    @Test
+    void tiesGoToTheEarlierPlacement() throws IOException {
+        Rectangle placed = new Rectangle(100, 400, 200, 150);
+        byte[] pdf = pdfWithImages(placed, placed);
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            PageImageIndex index = PageImageIndex.build(pdfDocument.getFirstPage());
+            BitSet taken = new BitSet();
+            Rectangle region = new Rectangle(150, 450, 200, 150);
+
+            assertEquals(0, index.bestOverlap(region, taken));
+            taken.set(0);
+            assertEquals(1, index.bestOverlap(region, taken));
+            taken.set(1);
+            assertEquals(-1, index.bestOverlap(region, taken));
+        }
+    }
+
+    @Test
+    void largerOverlapWinsOverContentOrder() throws IOException {
+        byte[] pdf = pdfWithImages(new Rectangle(100, 400, 200, 150), new Rectangle(250, 400, 200, 150));
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            PageImageIndex index = PageImageIndex.build(pdfDocument.getFirstPage());
+
+            assertEquals(1, index.bestOverlap(new Rectangle(240, 400, 200, 150), new BitSet()));
+        }
+    }
+
+    @Test
+    void tagWithoutOverlapFallsBackToFirstFreePlacement() throws IOException {
+        byte[] pdf = pdfWithImages(new Rectangle(100, 400, 200, 150), new Rectangle(100, 100, 200, 150));
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            PdfPage page = pdfDocument.getFirstPage();
+            float pageHeight = page.getPageSize().getHeight();
+            PageImageIndex index = PageImageIndex.build(page);
+            Rectangle nowhere = new Rectangle(400, 700, 100, 50);
+            assertEquals(-1, index.bestOverlap(nowhere, new BitSet()));
+
+            // The first tag takes the lower image; the second overlaps nothing and gets the one left
+            JSONArray tags = new JSONArray()
+                    .put(tag("below", new Rectangle(100, 100, 200, 150), pageHeight))
+                    .put(tag("nowhere", nowhere, pageHeight));
+            Map<Integer, ImageDataWithPosition> matches = new ImageExtractor().matchPageImages(
+                    page, 1, List.of(0, 1), tags, (stream, rectangle) -> null);
+
+            assertEquals(index.getObjectNumber(1), matches.get(0).getObjectNumber());
+            assertEquals(index.getObjectNumber(0), matches.get(1).getObjectNumber());
+
+            // With every placement taken, a third tag is left unmatched
+            tags.put(tag("extra", nowhere, pageHeight));
+            matches = new ImageExtractor().matchPageImages(page, 1, List.of(0, 1, 2), tags, (stream, rectangle) -> null);
+            assertEquals(2, matches.size());
+        }
+    }
+
+    static byte[] pdfWithImages(Rectangle... placements) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(out))) {
+            PdfCanvas canvas = new PdfCanvas(pdfDocument.addNewPage(PageSize.A4));
+            ImageData image = ImageDataFactory.create(SyntheticPdf.png(1));
+            for (Rectangle placement : placements) {
+                canvas.addImageFittedIntoRectangle(image, placement, false);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static JSONObject tag(String id, Rectangle rectangle, float pageHeight) {
+        return new JSONObject()
+                .put("id", id)
+                .put("type", "image")
+                .put("page", 1)
+                .put("x", rectangle.getX() / CM_TO_POINTS)
+                .put("y", (pageHeight - rectangle.getTop()) / CM_TO_POINTS)
+                .put("width", rectangle.getWidth() / CM_TO_POINTS)
+                .put("height", rectangle.getHeight() / CM_TO_POINTS);
+    }
+
+    private static Rectangle tagRectangle(JSONObject tag, float pageHeight) {
+        float x = tag.getFloat("x") * CM_TO_POINTS;
+        float y = tag.getFloat("y") * CM_TO_POINTS;
+        float width = tag.getFloat("width") * CM_TO_POINTS;
+        float height = tag.getFloat("height") * CM_TO_POINTS;
+        return new Rectangle(x, pageHeight - y - height, width, height);
+    }
+}
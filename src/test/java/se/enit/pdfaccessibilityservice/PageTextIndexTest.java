@@ -0,0 +1,113 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replaying a region from the page text index must give the listener exactly what parsing the page
+ * with that listener gives it, in the same order.
+ */
+class PageTextIndexTest {
+
+    private static final float CM_TO_POINTS = 28.3465f;
+
+    @Test
+    void replayMatchesParsingPerRegion() throws IOException {
+        SyntheticPdf synthetic = SyntheticPdf.generate(2, 3, 2, 4, 3, 0);
+        JSONArray tags = new JSONObject(synthetic.getTags()).getJSONArray("taggingInformation");
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(synthetic.getPdf())))) {
+            for (int p = 1; p <= pdfDocument.getNumberOfPages(); p++) {
+                PdfPage page = pdfDocument.getPage(p);
+                float pageHeight = page.getPageSize().getHeight();
+                List<Rectangle> regions = new ArrayList<>();
+                for (int i = 0; i < tags.length(); i++) {
+                    JSONObject tag = tags.getJSONObject(i);
+                    if (tag.getInt("page") == p) {
+                        regions.add(region(tag, pageHeight));
+                    }
+                }
+                PageTextIndex index = PageTextIndex.build(page, regions);
+
+                // Besides the tags: the whole page, a region straddling two text blocks, a sliver
+                // between two lines and a region with no text at all
+                List<Rectangle> queries = new ArrayList<>(regions);
+                queries.add(page.getPageSize());
+                queries.add(new Rectangle(3 * CM_TO_POINTS, pageHeight - 5 * CM_TO_POINTS, 4 * CM_TO_POINTS, 2 * CM_TO_POINTS));
+                queries.add(new Rectangle(2 * CM_TO_POINTS, pageHeight - 2.76f * CM_TO_POINTS, 10 * CM_TO_POINTS, 0.02f * CM_TO_POINTS));
+                queries.add(new Rectangle(15 * CM_TO_POINTS, 2 * CM_TO_POINTS, 3 * CM_TO_POINTS, 3 * CM_TO_POINTS));
+
+                for (Rectangle query : queries) {
+                    assertSameExtraction(page, index, query);
+                }
+                for (Rectangle tagged : regions) {
+                    CustomTextRenderListener listener = new CustomTextRenderListener(tagged);
+                    index.replay(tagged, listener);
+                    assertTrue(listener.getChunks().size() > 0, "no text in tagged region " + tagged);
+                }
+            }
+        }
+    }
+
+    @Test
+    void replayOnPageWithoutTextFindsNothing() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(out))) {
+            pdfDocument.addNewPage(PageSize.A4);
+        }
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(out.toByteArray())))) {
+            PdfPage page = pdfDocument.getFirstPage();
+            PageTextIndex index = PageTextIndex.build(page, List.of(page.getPageSize()));
+            CustomTextRenderListener listener = new CustomTextRenderListener(page.getPageSize());
+            index.replay(page.getPageSize(), listener);
+
+            assertEquals(0, index.getChunks().size());
+            assertEquals("", listener.getCleanExtractedText());
+        }
+    }
+
+    private static void assertSameExtraction(PdfPage page, PageTextIndex index, Rectangle region) {
+        CustomTextRenderListener expected = new CustomTextRenderListener(region);
+        new PdfCanvasProcessor(expected).processPageContent(page);
+        CustomTextRenderListener actual = new CustomTextRenderListener(region);
+        index.replay(region, actual);
+
+        String where = "region " + region;
+        assertEquals(expected.getChunks().size(), actual.getChunks().size(), where);
+        // Before preprocessing the text is the chunks in the order they were accepted
+        assertEquals(expected.getCleanExtractedText(), actual.getCleanExtractedText(), where);
+        assertEquals(expected.getExtractedFontName(), actual.getExtractedFontName(), where);
+        assertEquals(expected.getExtractedFontSize(), actual.getExtractedFontSize(), where);
+
+        expected.preprocessYCoordinates();
+        actual.preprocessYCoordinates();
+        assertEquals(expected.getCleanExtractedText(), actual.getCleanExtractedText(), where);
+        assertTrue(expected.getCombinedBoundingBox().equalsWithEpsilon(actual.getCombinedBoundingBox()), where);
+    }
+
+    private static Rectangle region(JSONObject tag, float pageHeight) {
+        float x = tag.getFloat("x") * CM_TO_POINTS;
+        float y = tag.getFloat("y") * CM_TO_POINTS;
+        float width = tag.getFloat("width") * CM_TO_POINTS;
+        float height = tag.getFloat("height") * CM_TO_POINTS;
+        return new Rectangle(x, pageHeight - y - height, width, height);
+    }
+}
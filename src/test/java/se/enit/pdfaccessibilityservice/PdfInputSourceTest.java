@@ -0,0 +1,52 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfInputSourceTest {
+
+    @Test
+    void spooledFileIsDeletedOnClose() throws IOException {
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 1, 0, 1, 1, 0);
+        Path spooled;
+        try (PdfInputSource source = PdfInputSource.spool(
+                new MockMultipartFile("pdfFile", "input.pdf", "application/pdf", synthetic.getPdf()))) {
+            try (PdfDocument pdfDocument = new PdfDocument(source.newReader())) {
+                assertEquals(1, pdfDocument.getNumberOfPages());
+            }
+            spooled = source.getFile();
+            assertTrue(Files.exists(spooled));
+        }
+        assertFalse(Files.exists(spooled));
+    }
+
+    @Test
+    void closedSourceOpensNoReaders() throws IOException {
+        Path file = Files.createTempFile("pdf-input-source-test", ".pdf");
+        try {
+            Files.write(file, SyntheticPdf.generate(1, 1, 0, 1, 1, 0).getPdf());
+            PdfInputSource source = PdfInputSource.open(file);
+            long length = source.length();
+            source.close();
+            source.close();
+
+            assertThrows(IOException.class, source::newReader);
+            assertThrows(IOException.class, source::loadPdfBox);
+            assertEquals(Files.size(file), length);
+            assertEquals(length, source.length());
+            assertTrue(Files.exists(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package se.enit.pdfaccessibilityservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfJobServiceTest {
+
+    private ThreadPoolExecutor extractionExecutor;
+    private ThreadPoolExecutor imageExecutor;
+    private ThreadPoolExecutor processingExecutor;
+    private ThreadPoolExecutor jobExecutor;
+    private Path workDir;
+    private PdfService pdfService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        extractionExecutor = executorConfig.pdfExtractionExecutor(0);
+        imageExecutor = executorConfig.pdfImageExecutor(0);
+        processingExecutor = executorConfig.pdfProcessingExecutor(0);
+        jobExecutor = executorConfig.pdfJobExecutor(2, 50);
+        workDir = Files.createTempDirectory("pdf-job-service-test");
+
+        FontProgramCache fontProgramCache = new FontProgramCache(64L << 20);
+        ImageTranscoder imageTranscoder = new ImageTranscoder(imageExecutor, 4, new String[0]);
+        MemoryBudget memoryBudget = new MemoryBudget(0, 20, 10000, 16L << 20, 2, 256L << 10, 64L << 10);
+        pdfService = new PdfService(new PageExtractionStage(extractionExecutor, imageTranscoder), imageTranscoder,
+                fontProgramCache, new FontRegistry("classpath*:fonts/*.*", "Arial"),
+                new FontStore(fontProgramCache, workDir.resolve("fonts").toString()), memoryBudget, processingExecutor,
+                new PdfMetrics(new SimpleMeterRegistry(), fontProgramCache, memoryBudget,
+                        TemplateRepositories.storing("synthetic"), 50));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        jobExecutor.shutdown();
+        extractionExecutor.shutdown();
+        imageExecutor.shutdown();
+        processingExecutor.shutdown();
+        try (var files = Files.walk(workDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void filesOfAnEarlierRunAreDeletedAtStartup() throws IOException {
+        Path jobs = Files.createDirectories(workDir.resolve("jobs"));
+        Path input = Files.writeString(jobs.resolve("old.in.pdf"), "input");
+        Path tags = Files.writeString(jobs.resolve("old.tags.json"), "{}");
+        Path output = Files.writeString(jobs.resolve("old.out.pdf"), "output");
+        Path unrelated = Files.writeString(jobs.resolve("notes.txt"), "kept");
+
+        new PdfJobService(pdfService, jobExecutor, jobs.toString(), 60);
+
+        assertFalse(Files.exists(input));
+        assertFalse(Files.exists(tags));
+        assertFalse(Files.exists(output));
+        assertTrue(Files.exists(unrelated));
+    }
+
+    @Test
+    void failedJobReportsAGenericReason() throws Exception {
+        PdfJobService jobService = new PdfJobService(pdfService, jobExecutor, workDir.resolve("jobs").toString(), 60);
+
+        PdfJob job = jobService.submit(upload("not a pdf".getBytes(StandardCharsets.US_ASCII)),
+                "{\"taggingInformation\":[]}");
+        awaitFinished(job);
+
+        assertEquals(PdfJob.Status.FAILED, job.getStatus());
+        assertEquals("Processing failed", job.getError());
+    }
+
+    @Test
+    void resultIsNotExpiredWhileItIsDownloaded() throws Exception {
+        PdfJobService jobService = new PdfJobService(pdfService, jobExecutor, workDir.resolve("jobs").toString(), 0);
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 1, 0, 1, 1, 0);
+
+        PdfJob job = jobService.submit(upload(synthetic.getPdf()), synthetic.getTags());
+        awaitFinished(job);
+        assertEquals(PdfJob.Status.DONE, job.getStatus());
+
+        try (InputStream result = jobService.openResult(job).orElseThrow()) {
+            jobService.expireJobs();
+            assertTrue(jobService.getJob(job.getId()).isPresent());
+            assertTrue(result.readAllBytes().length > 0);
+        }
+
+        jobService.expireJobs();
+        assertTrue(jobService.getJob(job.getId()).isEmpty());
+        assertFalse(Files.exists(job.getOutputFile()));
+        assertTrue(jobService.openResult(job).isEmpty());
+    }
+
+    @Test
+    void failedUploadLeavesNoFiles() throws IOException {
+        Path jobs = workDir.resolve("jobs");
+        PdfJobService jobService = new PdfJobService(pdfService, jobExecutor, jobs.toString(), 60);
+        MockMultipartFile upload = new MockMultipartFile("pdf", "input.pdf", "application/pdf", new byte[1024]) {
+            @Override
+            public void transferTo(Path dest) throws IOException {
+                Files.write(dest, new byte[512]);
+                throw new IOException("No space left on device");
+            }
+        };
+
+        assertThrows(IOException.class, () -> jobService.submit(upload, "{\"taggingInformation\":[]}"));
+
+        try (Stream<Path> files = Files.list(jobs)) {
+            assertEquals(0, files.count());
+        }
+        assertEquals(0, jobExecutor.getTaskCount());
+    }
+
+    private static MockMultipartFile upload(byte[] pdf) {
+        return new MockMultipartFile("pdf", "input.pdf", "application/pdf", pdf);
+    }
+
+    private static void awaitFinished(PdfJob job) throws InterruptedException {
+        for (int i = 0; i < 600 && job.getFinishedAt() == null; i++) {
+            Thread.sleep(50);
+        }
+    }
+}
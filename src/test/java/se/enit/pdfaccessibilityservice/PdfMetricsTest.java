@@ -0,0 +1,82 @@
+package se.enit.pdfaccessibilityservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import se.enit.pdfaccessibilityservice.templates.TemplateRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PdfMetricsTest {
+
+    private final FontProgramCache fontProgramCache = new FontProgramCache(1L << 20);
+    private final MemoryBudget memoryBudget = new MemoryBudget(0, 20, 10000, 16L << 20, 2, 256L << 10, 64L << 10);
+
+    @Test
+    void onlyStoredTemplatesAreTaggedByName() {
+        PdfMetrics metrics = metrics(TemplateRepositories.storing("invoice", "report"), 50);
+        assertEquals(PdfMetrics.TEMPLATE_OTHER, metrics.templateTag("invoice"));
+
+        metrics.refreshTemplateNames();
+        assertEquals("invoice", metrics.templateTag("invoice"));
+        assertEquals("report", metrics.templateTag("report"));
+        assertEquals(PdfMetrics.TEMPLATE_OTHER, metrics.templateTag("invoice-" + System.nanoTime()));
+        assertEquals(PdfMetrics.TEMPLATE_NONE, metrics.templateTag(""));
+        assertEquals(PdfMetrics.TEMPLATE_NONE, metrics.templateTag(null));
+    }
+
+    @Test
+    void taggedTemplatesAreLimited() {
+        PdfMetrics metrics = metrics(TemplateRepositories.storing("c", "a", "b"), 2);
+        metrics.refreshTemplateNames();
+
+        assertEquals("a", metrics.templateTag("a"));
+        assertEquals("b", metrics.templateTag("b"));
+        assertEquals(PdfMetrics.TEMPLATE_OTHER, metrics.templateTag("c"));
+    }
+
+    @Test
+    void taggingDoesNotQueryTheRepository() {
+        AtomicInteger queries = new AtomicInteger();
+        TemplateRepository stored = TemplateRepositories.storing("invoice");
+        TemplateRepository counting = (TemplateRepository) Proxy.newProxyInstance(TemplateRepository.class.getClassLoader(),
+                new Class<?>[]{TemplateRepository.class}, (proxy, method, args) -> {
+                    queries.incrementAndGet();
+                    return method.invoke(stored, args);
+                });
+        PdfMetrics metrics = metrics(counting, 50);
+        metrics.refreshTemplateNames();
+
+        for (int i = 0; i < 100; i++) {
+            metrics.templateTag("unknown-" + i);
+            metrics.templateTag("invoice");
+        }
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    void failedRefreshKeepsTheNamesLoadedBefore() {
+        AtomicBoolean available = new AtomicBoolean(true);
+        TemplateRepository stored = TemplateRepositories.storing("invoice");
+        TemplateRepository flaky = (TemplateRepository) Proxy.newProxyInstance(TemplateRepository.class.getClassLoader(),
+                new Class<?>[]{TemplateRepository.class}, (proxy, method, args) -> {
+                    if (!available.get()) {
+                        throw new IllegalStateException("MongoDB is down");
+                    }
+                    return method.invoke(stored, args);
+                });
+        PdfMetrics metrics = metrics(flaky, 50);
+        metrics.refreshTemplateNames();
+
+        available.set(false);
+        metrics.refreshTemplateNames();
+        assertEquals("invoice", metrics.templateTag("invoice"));
+    }
+
+    private PdfMetrics metrics(TemplateRepository templateRepository, int maxTemplates) {
+        return new PdfMetrics(new SimpleMeterRegistry(), fontProgramCache, memoryBudget, templateRepository, maxTemplates);
+    }
+}
@@ -0,0 +1,260 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+import com.itextpdf.kernel.pdf.tagging.IStructureNode;
+import com.itextpdf.kernel.pdf.tagging.PdfStructElem;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Processes whole documents through the service, wired by hand with the defaults from
+ * application.properties.
+ */
+class PdfServiceTest {
+
+    private ThreadPoolExecutor extractionExecutor;
+    private ThreadPoolExecutor imageExecutor;
+    private ThreadPoolExecutor processingExecutor;
+    private Path workDir;
+    private FontProgramCache fontProgramCache;
+    private FontStore fontStore;
+    private MemoryBudget memoryBudget;
+    private PdfService pdfService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ExecutorConfig executorConfig = new ExecutorConfig();
+        extractionExecutor = executorConfig.pdfExtractionExecutor(0);
+        imageExecutor = executorConfig.pdfImageExecutor(0);
+        processingExecutor = executorConfig.pdfProcessingExecutor(0);
+        workDir = Files.createTempDirectory("pdf-service-test");
+        fontProgramCache = new FontProgramCache(64L << 20);
+        fontStore = new FontStore(fontProgramCache, workDir.resolve("fonts").toString());
+        memoryBudget = new MemoryBudget(0, 20, 10000, 16L << 20, 2, 256L << 10, 64L << 10);
+        pdfService = createService("Arial");
+    }
+
+    private PdfService createService(String defaultFontFamily) {
+        ImageTranscoder imageTranscoder = new ImageTranscoder(imageExecutor, 4, new String[0]);
+        return new PdfService(new PageExtractionStage(extractionExecutor, imageTranscoder), imageTranscoder,
+                fontProgramCache, new FontRegistry("classpath*:fonts/*.*", defaultFontFamily), fontStore, memoryBudget,
+                processingExecutor, new PdfMetrics(new SimpleMeterRegistry(), fontProgramCache, memoryBudget,
+                        TemplateRepositories.storing("synthetic"), 50));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        extractionExecutor.shutdown();
+        imageExecutor.shutdown();
+        processingExecutor.shutdown();
+        try (var files = Files.walk(workDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void textWithoutResolvableFontIsReinserted() throws IOException {
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 2, 0, 1, 1, 0);
+        JSONObject tags = new JSONObject(synthetic.getTags());
+        JSONArray elements = tags.getJSONArray("taggingInformation");
+        // One element names no font at all, the other embeds data that is not a font
+        elements.getJSONObject(0).remove("fontFamily");
+        elements.getJSONObject(1).remove("fontFamily");
+        elements.getJSONObject(1).put("font", Base64.getEncoder().encodeToString("not a font".getBytes(StandardCharsets.US_ASCII)));
+
+        try (PdfDocument output = process(synthetic.getPdf(), tags.toString())) {
+            List<String> roles = new ArrayList<>();
+            collectRoles(output.getStructTreeRoot().getKids(), roles);
+            assertTrue(roles.contains("H1"), roles.toString());
+            assertTrue(roles.contains("P"), roles.toString());
+
+            String text = PdfTextExtractor.getTextFromPage(output.getFirstPage());
+            assertTrue(text.contains("Page 1 block 1 line 2"), text);
+        }
+    }
+
+    @Test
+    void unknownFontFamilyFallsBackToTheDefaultFamily() throws IOException {
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 1, 0, 1, 1, 0);
+        JSONObject tags = new JSONObject(synthetic.getTags());
+        tags.getJSONArray("taggingInformation").getJSONObject(0).put("fontFamily", "No Such Family");
+
+        try (PdfDocument output = process(synthetic.getPdf(), tags.toString())) {
+            assertTrue(fontNames(output).stream().anyMatch(name -> name.endsWith("+ArialMT")), fontNames(output).toString());
+        }
+    }
+
+    @Test
+    void helveticaIsTheFallbackWhenTheDefaultFamilyIsNotBundled() throws IOException {
+        DocumentFonts documentFonts = new DocumentFonts();
+        PdfFont font = createService("No Such Family").resolveFont(new JSONObject().put("fontFamily", "No Such Family"), documentFonts);
+
+        assertEquals(StandardFonts.HELVETICA, font.getFontProgram().getFontNames().getFontName());
+    }
+
+    @Test
+    void unknownFontRefIsRejectedBeforeProcessing() throws IOException {
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 1, 0, 1, 1, 0);
+        JSONObject tags = new JSONObject(synthetic.getTags());
+        String fontRef = "0".repeat(64);
+        tags.getJSONArray("taggingInformation").getJSONObject(0).remove("fontFamily");
+        tags.getJSONArray("taggingInformation").getJSONObject(0).put("fontRef", fontRef);
+
+        Path input = Files.write(workDir.resolve("input.pdf"), synthetic.getPdf());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PdfInputSource source = PdfInputSource.open(input)) {
+            InvalidTagsException e = assertThrows(InvalidTagsException.class,
+                    () -> pdfService.processPdf(source, tags.toString(), out));
+            assertTrue(e.getMessage().contains(fontRef), e.getMessage());
+        }
+        assertEquals(0, out.size());
+        assertThrows(InvalidTagsException.class, () -> pdfService.validateTags(tags.toString()));
+    }
+
+    @Test
+    void invalidImageOptimizationIsRejectedBeforeProcessing() throws IOException {
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 1, 0, 1, 1, 1);
+        JSONObject tags = new JSONObject(synthetic.getTags());
+
+        for (JSONObject options : List.of(
+                new JSONObject().put("targetDpi", 150).put("encoder", "webp"),
+                new JSONObject().put("targetDpi", 150).put("jpegQuality", 1.5),
+                new JSONObject().put("targetDpi", 150).put("jpegQuality", "high"))) {
+            tags.put("imageOptimization", options);
+            assertThrows(InvalidTagsException.class, () -> pdfService.validateTags(tags.toString()), options.toString());
+
+            Path input = Files.write(workDir.resolve("input.pdf"), synthetic.getPdf());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (PdfInputSource source = PdfInputSource.open(input)) {
+                assertThrows(InvalidTagsException.class, () -> pdfService.processPdf(source, tags.toString(), out));
+            }
+            assertEquals(0, out.size());
+        }
+
+        tags.put("imageOptimization", new JSONObject().put("targetDpi", 150).put("encoder", "JPEG").put("jpegQuality", 0.5));
+        pdfService.validateTags(tags.toString());
+    }
+
+    @Test
+    void registeredFontRefIsUsed() throws IOException {
+        String fontRef;
+        try (InputStream in = getClass().getResourceAsStream("/fonts/ariali.ttf")) {
+            fontRef = fontStore.register(in.readAllBytes()).getKey();
+        }
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 1, 0, 1, 1, 0);
+        JSONObject tags = new JSONObject(synthetic.getTags());
+        tags.getJSONArray("taggingInformation").getJSONObject(0).remove("fontFamily");
+        tags.getJSONArray("taggingInformation").getJSONObject(0).put("fontRef", fontRef);
+
+        try (PdfDocument output = process(synthetic.getPdf(), tags.toString())) {
+            assertTrue(fontNames(output).stream().anyMatch(name -> name.endsWith("+Arial-ItalicMT")), fontNames(output).toString());
+        }
+    }
+
+    @Test
+    void interruptedRequestWaitsForTheRunningTask() throws Exception {
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 1, 0, 1, 1, 0);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Like iText, the output ignores interrupts
+        OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) {
+                writing.countDown();
+                while (release.getCount() > 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Ignored
+                    }
+                }
+            }
+        };
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread request = new Thread(() -> {
+            try {
+                pdfService.processPdf(new MockMultipartFile("pdf", "input.pdf", "application/pdf", synthetic.getPdf()),
+                        synthetic.getTags(), output);
+            } catch (Throwable t) {
+                thrown.set(t);
+            }
+        });
+
+        request.start();
+        assertTrue(writing.await(30, TimeUnit.SECONDS));
+        request.interrupt();
+        request.join(500);
+        // Still holding the reservation and the input for the task that runs on
+        assertTrue(request.isAlive());
+        assertTrue(memoryBudget.getReservedBytes() > 0);
+
+        release.countDown();
+        request.join(30000);
+        assertFalse(request.isAlive());
+        assertInstanceOf(InterruptedIOException.class, thrown.get());
+        assertEquals(0, memoryBudget.getReservedBytes());
+    }
+
+    private PdfDocument process(byte[] pdf, String tags) throws IOException {
+        Path input = Files.write(workDir.resolve("input.pdf"), pdf);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PdfInputSource source = PdfInputSource.open(input)) {
+            pdfService.processPdf(source, tags, out);
+        }
+        return new PdfDocument(new PdfReader(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    private static Set<String> fontNames(PdfDocument pdfDocument) {
+        Set<String> names = new TreeSet<>();
+        PdfDictionary fonts = pdfDocument.getFirstPage().getResources().getResource(PdfName.Font);
+        for (PdfName name : fonts.keySet()) {
+            names.add(fonts.getAsDictionary(name).getAsName(PdfName.BaseFont).getValue());
+        }
+        return names;
+    }
+
+    private static void collectRoles(List<IStructureNode> nodes, List<String> roles) {
+        for (IStructureNode node : nodes) {
+            if (node instanceof PdfStructElem) {
+                roles.add(((PdfStructElem) node).getRole().getValue());
+                collectRoles(node.getKids(), roles);
+            }
+        }
+    }
+}
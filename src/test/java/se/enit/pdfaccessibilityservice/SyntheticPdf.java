@@ -0,0 +1,208 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Generates an A4 input PDF and matching tags with a given number of pages, text blocks, tables and
+ * images, laid out the way the templates describe them: positions in cm from the top left corner.
+ * Text blocks fill the top of the left column, tables are stacked below them, and images fill the
+ * right column. Every image is distinct, so no work is saved by de-duplication.
+ */
+public final class SyntheticPdf {
+
+    private static final float CM_TO_POINTS = 28.3465f;
+    private static final float PAGE_HEIGHT_CM = PageSize.A4.getHeight() / CM_TO_POINTS;
+
+    private static final float MARGIN_CM = 2f;
+    private static final float TEXT_WIDTH_CM = 10f;
+    private static final float TEXT_BLOCK_HEIGHT_CM = 2f;
+    private static final float ROW_HEIGHT_CM = 0.6f;
+    private static final float TABLE_GAP_CM = 0.5f;
+    private static final float IMAGE_X_CM = 13f;
+    private static final float IMAGE_WIDTH_CM = 6f;
+    private static final float IMAGE_HEIGHT_CM = 4.5f;
+    private static final int LINES_PER_BLOCK = 3;
+
+    private final byte[] pdf;
+    private final String tags;
+    private final int pages;
+    private final int tagCount;
+
+    private SyntheticPdf(byte[] pdf, String tags, int pages, int tagCount) {
+        this.pdf = pdf;
+        this.tags = tags;
+        this.pages = pages;
+        this.tagCount = tagCount;
+    }
+
+    /**
+     * A document with three text blocks per page and 8 x 4 tables.
+     */
+    public static SyntheticPdf generate(int pages, int tablesPerPage, int imagesPerPage) {
+        return generate(pages, 3, tablesPerPage, 8, 4, imagesPerPage);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the requested content does not fit on an A4 page
+     */
+    public static SyntheticPdf generate(int pages, int textBlocksPerPage, int tablesPerPage,
+                                        int tableRows, int tableCols, int imagesPerPage) {
+        float textBottom = MARGIN_CM + textBlocksPerPage * TEXT_BLOCK_HEIGHT_CM;
+        float tableHeight = tableRows * ROW_HEIGHT_CM;
+        float tablesBottom = textBottom + tablesPerPage * (TABLE_GAP_CM + tableHeight);
+        float imagesBottom = MARGIN_CM + imagesPerPage * (IMAGE_HEIGHT_CM + TABLE_GAP_CM);
+        if (tablesBottom > PAGE_HEIGHT_CM - MARGIN_CM || imagesBottom > PAGE_HEIGHT_CM - MARGIN_CM) {
+            throw new IllegalArgumentException("Content does not fit on an A4 page: " + textBlocksPerPage
+                    + " text blocks, " + tablesPerPage + " tables of " + tableRows + " rows, " + imagesPerPage + " images");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JSONArray taggingInformation = new JSONArray();
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfWriter(out))) {
+            PdfFont font = PdfFontFactory.createFont(StandardFonts.HELVETICA);
+            for (int p = 1; p <= pages; p++) {
+                PdfPage page = pdfDocument.addNewPage(PageSize.A4);
+                PdfCanvas canvas = new PdfCanvas(page);
+
+                for (int b = 0; b < textBlocksPerPage; b++) {
+                    float top = MARGIN_CM + b * TEXT_BLOCK_HEIGHT_CM;
+                    for (int line = 0; line < LINES_PER_BLOCK; line++) {
+                        showText(canvas, font, 10, MARGIN_CM, top + 0.5f + line * 0.45f,
+                                "Page " + p + " block " + b + " line " + line + ": the quick brown fox jumps over the lazy dog");
+                    }
+                    taggingInformation.put(new JSONObject()
+                            .put("id", "text-" + p + "-" + b)
+                            .put("type", "text")
+                            .put("page", p)
+                            .put("x", MARGIN_CM)
+                            .put("y", top)
+                            .put("width", TEXT_WIDTH_CM)
+                            .put("height", TEXT_BLOCK_HEIGHT_CM)
+                            .put("tag", b == 0 ? "H1" : "P")
+                            .put("fontFamily", "Arial")
+                            .put("section", "Text"));
+                }
+
+                float colWidth = TEXT_WIDTH_CM / tableCols;
+                for (int t = 0; t < tablesPerPage; t++) {
+                    float top = textBottom + TABLE_GAP_CM + t * (TABLE_GAP_CM + tableHeight);
+                    JSONArray rowPositions = new JSONArray();
+                    JSONArray colPositions = new JSONArray();
+                    for (int r = 0; r <= tableRows; r++) {
+                        rowPositions.put(r * ROW_HEIGHT_CM);
+                    }
+                    for (int c = 0; c <= tableCols; c++) {
+                        colPositions.put(c * colWidth);
+                    }
+                    for (int r = 0; r < tableRows; r++) {
+                        for (int c = 0; c < tableCols; c++) {
+                            showText(canvas, font, 8, MARGIN_CM + c * colWidth + 0.1f, top + r * ROW_HEIGHT_CM + 0.45f,
+                                    r == 0 ? "Header " + c : "R" + r + "C" + c);
+                        }
+                    }
+                    taggingInformation.put(new JSONObject()
+                            .put("id", "table-" + p + "-" + t)
+                            .put("type", "table")
+                            .put("page", p)
+                            .put("x", MARGIN_CM)
+                            .put("y", top)
+                            .put("width", TEXT_WIDTH_CM)
+                            .put("height", tableHeight)
+                            .put("containsTable", true)
+                            .put("rowCount", tableRows)
+                            .put("colCount", tableCols)
+                            .put("rowPositions", rowPositions)
+                            .put("colPositions", colPositions)
+                            .put("wcagData", new JSONObject()
+                                    .put("hasHeader", true)
+                                    .put("headerRows", new JSONArray().put(0))
+                                    .put("headerCols", new JSONArray()))
+                            .put("section", "Tables"));
+                }
+
+                for (int i = 0; i < imagesPerPage; i++) {
+                    float top = MARGIN_CM + i * (IMAGE_HEIGHT_CM + TABLE_GAP_CM);
+                    Rectangle placed = new Rectangle(IMAGE_X_CM * CM_TO_POINTS,
+                            (PAGE_HEIGHT_CM - top - IMAGE_HEIGHT_CM) * CM_TO_POINTS,
+                            IMAGE_WIDTH_CM * CM_TO_POINTS, IMAGE_HEIGHT_CM * CM_TO_POINTS);
+                    canvas.addImageFittedIntoRectangle(ImageDataFactory.create(png(p * 31 + i)), placed, false);
+                    taggingInformation.put(new JSONObject()
+                            .put("id", "image-" + p + "-" + i)
+                            .put("type", "image")
+                            .put("name", String.format("image-%05d-%02d", p, i))
+                            .put("page", p)
+                            .put("x", IMAGE_X_CM)
+                            .put("y", top)
+                            .put("width", IMAGE_WIDTH_CM)
+                            .put("height", IMAGE_HEIGHT_CM)
+                            .put("alt", "Generated image " + i + " on page " + p)
+                            .put("section", "Images"));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        String tags = new JSONObject()
+                .put("templateName", "synthetic")
+                .put("taggingInformation", taggingInformation)
+                .toString();
+        return new SyntheticPdf(out.toByteArray(), tags, pages, taggingInformation.length());
+    }
+
+    private static void showText(PdfCanvas canvas, PdfFont font, float size, float xCm, float baselineCm, String text) {
+        canvas.beginText()
+                .setFontAndSize(font, size)
+                .moveText(xCm * CM_TO_POINTS, (PAGE_HEIGHT_CM - baselineCm) * CM_TO_POINTS)
+                .showText(text)
+                .endText();
+    }
+
+    static byte[] png(int seed) throws IOException {
+        BufferedImage image = new BufferedImage(480, 360, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int r = (x + seed * 7) & 0xFF;
+                int g = (y + seed * 13) & 0xFF;
+                int b = ((x ^ y) + seed) & 0xFF;
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    public byte[] getPdf() {
+        return pdf;
+    }
+
+    public String getTags() {
+        return tags;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    public int getTagCount() {
+        return tagCount;
+    }
+}
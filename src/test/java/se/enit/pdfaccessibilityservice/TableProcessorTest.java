@@ -0,0 +1,108 @@
+package se.enit.pdfaccessibilityservice;
+
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cells extracted in one pass over the page text index must match parsing the page once per cell
+ * rectangle, the way cells were extracted before the index existed.
+ */
+class TableProcessorTest {
+
+    private static final float CM_TO_POINTS = 28.3465f;
+
+    private final TableProcessor tableProcessor = new TableProcessor();
+
+    @Test
+    void cellsMatchPerCellParsing() throws IOException {
+        assertSameCells(List.of(0f, 0.6f, 1.2f, 1.8f, 2.4f), List.of(0f, 2.5f, 5f, 7.5f, 10f));
+    }
+
+    @Test
+    void cellsNotAlignedWithTheTextMatchPerCellParsing() throws IOException {
+        // Edges cutting through the drawn text, so chunks straddle cells
+        assertSameCells(List.of(0f, 0.35f, 1.5f, 1.55f, 2.4f), List.of(0f, 0.4f, 3.3f, 3.3f, 8.7f, 10f));
+    }
+
+    @Test
+    void unorderedEdgesFallBackToPerCellQueries() throws IOException {
+        assertSameCells(List.of(0f, 1.2f, 0.6f, 2.4f), List.of(0f, 5f, 2.5f, 10f));
+    }
+
+    private void assertSameCells(List<Float> rowPositions, List<Float> colPositions) throws IOException {
+        SyntheticPdf synthetic = SyntheticPdf.generate(1, 1, 1, 4, 4, 0);
+        JSONObject table = new JSONObject(synthetic.getTags()).getJSONArray("taggingInformation").getJSONObject(1);
+
+        TaggingInfo tableInfo = new TaggingInfo();
+        tableInfo.setId(table.getString("id"));
+        tableInfo.setPage(1);
+        tableInfo.setX(table.getDouble("x"));
+        tableInfo.setY(table.getDouble("y"));
+        tableInfo.setWidth(table.getDouble("width"));
+        tableInfo.setHeight(table.getDouble("height"));
+        tableInfo.setContainsTable(true);
+        tableInfo.setRowPositions(rowPositions);
+        tableInfo.setColPositions(colPositions);
+        WcagTableData wcagData = new WcagTableData();
+        wcagData.setHeaderRows(List.of(0));
+        wcagData.setHeaderCols(List.of(1));
+        tableInfo.setWcagData(wcagData);
+
+        try (PdfDocument pdfDocument = new PdfDocument(new PdfReader(new ByteArrayInputStream(synthetic.getPdf())))) {
+            PdfPage page = pdfDocument.getFirstPage();
+            float pageHeight = page.getPageSize().getHeight();
+            float tableX = table.getFloat("x") * CM_TO_POINTS;
+            float tableY = table.getFloat("y") * CM_TO_POINTS;
+            float tableHeight = table.getFloat("height") * CM_TO_POINTS;
+            Rectangle tableRegion = new Rectangle(tableX, pageHeight - tableY - tableHeight,
+                    table.getFloat("width") * CM_TO_POINTS, tableHeight);
+            PageTextIndex index = PageTextIndex.build(page, List.of(tableRegion));
+
+            List<TableCellData> cells = tableProcessor.extractTableCells(index, tableInfo, pageHeight);
+
+            int rowCount = rowPositions.size() - 1;
+            int colCount = colPositions.size() - 1;
+            assertEquals(rowCount * colCount, cells.size());
+            int nonEmpty = 0;
+            for (int i = 0; i < cells.size(); i++) {
+                TableCellData cell = cells.get(i);
+                assertEquals(i / colCount, cell.getRow());
+                assertEquals(i % colCount, cell.getCol());
+                assertEquals(cell.getRow() == 0 || cell.getCol() == 1, cell.isHeader());
+
+                float cellX = tableX + colPositions.get(cell.getCol()) * CM_TO_POINTS;
+                float cellY = tableY + rowPositions.get(cell.getRow()) * CM_TO_POINTS;
+                float cellWidth = (colPositions.get(cell.getCol() + 1) - colPositions.get(cell.getCol())) * CM_TO_POINTS;
+                float cellHeight = (rowPositions.get(cell.getRow() + 1) - rowPositions.get(cell.getRow())) * CM_TO_POINTS;
+                Rectangle region = new Rectangle(cellX, pageHeight - cellY - cellHeight, cellWidth, cellHeight);
+                assertTrue(region.equalsWithEpsilon(cell.getRect()), "rectangle of cell " + i);
+
+                CustomTextRenderListener expected = new CustomTextRenderListener(region);
+                new PdfCanvasProcessor(expected).processPageContent(page);
+                expected.preprocessYCoordinates();
+
+                String where = "cell [" + cell.getRow() + "][" + cell.getCol() + "]";
+                assertEquals(expected.getCleanExtractedText(), cell.getContent(), where);
+                assertEquals(expected.getExtractedFontName(), cell.getFontName(), where);
+                assertEquals(expected.getExtractedFontSize(), cell.getFontSize(), where);
+                if (!cell.getContent().isEmpty()) {
+                    nonEmpty++;
+                }
+            }
+            // Guard against comparing nothing with nothing
+            assertTrue(nonEmpty > 0, "no cell has text");
+        }
+    }
+}
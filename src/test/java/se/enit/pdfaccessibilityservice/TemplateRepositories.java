@@ -0,0 +1,38 @@
+package se.enit.pdfaccessibilityservice;
+
+import se.enit.pdfaccessibilityservice.templates.TemplateRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Template repositories for running the service without MongoDB.
+ */
+public final class TemplateRepositories {
+
+    private TemplateRepositories() {
+    }
+
+    /**
+     * A repository that only lists the names of the stored templates.
+     */
+    public static TemplateRepository storing(String... templateNames) {
+        Set<String> stored = Set.of(templateNames);
+        return (TemplateRepository) Proxy.newProxyInstance(TemplateRepository.class.getClassLoader(),
+                new Class<?>[]{TemplateRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findTemplateNames":
+                            return stored.stream().sorted().limit((Integer) args[0]).collect(Collectors.toList());
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "TemplateRepository" + stored;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}